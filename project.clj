@@ -20,4 +20,9 @@
                  ]
   :java-source-paths ["src/main/java" "src/test/java"]
   :javac-options ["-Xlint:unchecked"]
+  :profiles {:bench {:dependencies [[org.openjdk.jmh/jmh-core "1.21"]
+                                    [org.openjdk.jmh/jmh-generator-annprocess "1.21"]]
+                     :java-source-paths ["src/bench/java"]
+                     :resource-paths ["src/bench/resources"]}}
+  :aliases {"bench" ["with-profile" "+bench" "run" "-m" "com.youmag.logback.appenders.flume.BenchmarkRunner"]}
   :aot :all)
@@ -0,0 +1,71 @@
+package com.youmag.logback.appenders.flume;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * FlumeAppender.append from end to end, against an in-process avro source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class AppenderBenchmark {
+	@Param({"avro", "agent"})
+	public String type;
+
+	private AvroSourceStub stub;
+	private LoggerContext context;
+	private FlumeAppender appender;
+	private LoggingEvent event;
+
+	@Setup
+	public void setUp() {
+		stub = new AvroSourceStub(0);
+		context = new LoggerContext();
+		Logger logger = context.getLogger("com.example.web.LoginController");
+		event = new LoggingEvent(AppenderBenchmark.class.getName(), logger, Level.INFO,
+			"User {} logged in from {}", null, new Object[] {"alice", "10.1.2.3"});
+
+		PatternLayout layout = new PatternLayout();
+		layout.setContext(context);
+		layout.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+		layout.start();
+
+		appender = new FlumeAppender();
+		appender.setContext(context);
+		appender.setName("bench-" + type);
+		appender.setType(type);
+		appender.setLayout(layout);
+		appender.setBatchSize(100);
+		appender.setDataDir("InMemory");
+		appender.addAgent(stub.getAgent());
+		appender.start();
+	}
+
+	@TearDown
+	public void tearDown() {
+		appender.stop();
+		stub.close();
+		context.stop();
+	}
+
+	@Benchmark
+	public void append() {
+		appender.doAppend(event);
+	}
+}
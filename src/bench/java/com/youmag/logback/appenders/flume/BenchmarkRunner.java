@@ -0,0 +1,100 @@
+package com.youmag.logback.appenders.flume;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks with the GC profiler and exits with status 1 when a benchmark allocates more bytes per
+ * operation than its budget in alloc-budgets.properties, so that allocation regressions fail the build.
+ * <p>
+ * Budgets are keyed by class and method, followed by the parameter values if any, for example
+ * {@code AppenderBenchmark.append.avro}. The optional argument is a regular expression selecting the
+ * benchmarks to run.
+ */
+public class BenchmarkRunner {
+	private static final String BUDGETS = "alloc-budgets.properties";
+
+	/** The name of the normalized allocation rate, depending on the JMH version. */
+	private static final String[] ALLOC_NORM = {"\u00b7gc.alloc.rate.norm", "gc.alloc.rate.norm"};
+
+	public static void main(String[] args) throws Exception {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*Benchmark.*";
+		Options options = new OptionsBuilder()
+			.include(include)
+			.addProfiler(GCProfiler.class)
+			.warmupIterations(3)
+			.warmupTime(TimeValue.seconds(1))
+			.measurementIterations(5)
+			.measurementTime(TimeValue.seconds(1))
+			.forks(1)
+			.build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		Properties budgets = new Properties();
+		InputStream in = BenchmarkRunner.class.getClassLoader().getResourceAsStream(BUDGETS);
+		if (in == null) {
+			throw new IllegalStateException(BUDGETS + " not found on the classpath");
+		}
+		try {
+			budgets.load(in);
+		} finally {
+			in.close();
+		}
+
+		List<String> failures = new ArrayList<String>();
+		System.out.println();
+		System.out.println(String.format("%-55s %12s %12s", "Benchmark", "B/op", "Budget"));
+		for (RunResult result : results) {
+			String key = key(result);
+			Result<?> alloc = allocation(result);
+			String budget = budgets.getProperty(key);
+			double bytes = alloc == null ? Double.NaN : alloc.getScore();
+			System.out.println(String.format("%-55s %12.1f %12s", key, bytes, budget == null ? "-" : budget));
+			if (budget == null) {
+				failures.add(key + " has no allocation budget");
+			} else if (alloc == null) {
+				failures.add(key + " reported no allocation rate");
+			} else if (bytes > Double.parseDouble(budget)) {
+				failures.add(String.format("%s allocates %.1f B/op, budget is %s", key, bytes, budget));
+			}
+		}
+		if (!failures.isEmpty()) {
+			System.err.println();
+			for (String failure : failures) {
+				System.err.println("FAILED: " + failure);
+			}
+			System.exit(1);
+		}
+	}
+
+	private static String key(RunResult result) {
+		String benchmark = result.getParams().getBenchmark();
+		StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+			benchmark.lastIndexOf('.') - 1) + 1));
+		for (String param : result.getParams().getParamsKeys()) {
+			key.append('.').append(result.getParams().getParam(param));
+		}
+		return key.toString();
+	}
+
+	private static Result<?> allocation(RunResult result) {
+		for (String name : ALLOC_NORM) {
+			Result<?> alloc = result.getSecondaryResults().get(name);
+			if (alloc != null) {
+				return alloc;
+			}
+		}
+		return null;
+	}
+}
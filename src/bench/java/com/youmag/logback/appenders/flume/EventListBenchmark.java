@@ -0,0 +1,59 @@
+package com.youmag.logback.appenders.flume;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Batch accumulation in the avro manager, with one and with several logging threads, in a single batch and
+ * in striped batches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class EventListBenchmark {
+	private FlumeAvroManager.EventList events;
+	private BatchStripes stripes;
+	private AvroFlumeEvent event;
+
+	@Setup
+	public void setUp() {
+		events = new FlumeAvroManager.EventList(100, 0);
+		stripes = new BatchStripes(8, 100, 0);
+		event = new AvroFlumeEvent();
+		event.setHeaders(new HashMap<CharSequence, CharSequence>());
+		event.setBody(ByteBuffer.wrap(new byte[64]));
+	}
+
+	@Benchmark
+	public List<AvroFlumeEvent> addAndGet() {
+		return events.addAndGet(event, 64);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public List<AvroFlumeEvent> addAndGetContended() {
+		return events.addAndGet(event, 64);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public boolean stripedAddContended() {
+		if (stripes.add(event, 64)) {
+			stripes.poll();
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,81 @@
+package com.youmag.logback.appenders.flume;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * The stages an event goes through on the logging thread: header projection, rendering and compression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class FlumeEventBenchmark {
+	private LoggingEvent event;
+	private MdcProjection includes;
+	private MdcProjection excludes;
+	private PatternLayout layout;
+	private FlumeEvent compressed;
+	private byte[] body;
+
+	@Setup
+	public void setUp() throws Exception {
+		LoggerContext context = new LoggerContext();
+		Logger logger = context.getLogger("com.example.web.LoginController");
+		event = new LoggingEvent(FlumeEventBenchmark.class.getName(), logger, Level.INFO,
+			"User {} logged in from {}", null, new Object[] {"alice", "10.1.2.3"});
+		Map<String, String> mdc = new HashMap<String, String>();
+		mdc.put("requestId", "3f2a9c1e-77b4-4d1a-9e0f-5b8c2d4e6a10");
+		mdc.put("userId", "alice");
+		mdc.put("sessionId", "A1B2C3D4E5F6");
+		mdc.put("path", "/login");
+		event.setMDCPropertyMap(mdc);
+		event.getFormattedMessage();
+
+		includes = new MdcProjection("requestId,userId", null, "requestId", null, null);
+		excludes = new MdcProjection(null, "sessionId", null, "mdc.", null);
+
+		layout = new PatternLayout();
+		layout.setContext(context);
+		layout.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+		layout.start();
+
+		body = layout.doLayout(event).getBytes("UTF-8");
+		compressed = new FlumeEvent(event, includes, true);
+	}
+
+	@Benchmark
+	public FlumeEvent newEventWithIncludes() {
+		return new FlumeEvent(event, includes, false);
+	}
+
+	@Benchmark
+	public FlumeEvent newEventWithExcludes() {
+		return new FlumeEvent(event, excludes, false);
+	}
+
+	@Benchmark
+	public byte[] layoutToBytes() {
+		return Utf8Buffer.get().append(layout.doLayout(event)).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] gzipBody() {
+		compressed.setBody(body);
+		return compressed.getBody();
+	}
+}
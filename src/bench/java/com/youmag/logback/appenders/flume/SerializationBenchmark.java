@@ -0,0 +1,94 @@
+package com.youmag.logback.appenders.flume;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Avro serialization of a batch of 100 events with the usual headers, by Avro's own writer and by the
+ * FlumeDatumWriter used for requests, and the cost of writing it again once encoded, as on a retry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+	private static final Schema BATCH_SCHEMA = Schema.createArray(AvroFlumeEvent.SCHEMA$);
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+	private final DatumWriter<List<AvroFlumeEvent>> specific =
+		new SpecificDatumWriter<List<AvroFlumeEvent>>(BATCH_SCHEMA);
+	private final DatumWriter<List<AvroFlumeEvent>> flume =
+		new FlumeDatumWriter<List<AvroFlumeEvent>>(BATCH_SCHEMA);
+	private BinaryEncoder encoder;
+	private List<AvroFlumeEvent> batch;
+	private EncodedBatch encodedBatch;
+
+	@Setup
+	public void setUp() {
+		batch = new ArrayList<AvroFlumeEvent>();
+		for (int i = 0; i < 100; ++i) {
+			Map<CharSequence, CharSequence> headers = new HashMap<CharSequence, CharSequence>();
+			headers.put("timeStamp", Long.toString(1350000000000L + i));
+			headers.put("guId", UUIDUtil.getTimeBasedId());
+			headers.put("requestId", "req-" + i);
+			headers.put("userId", "alice");
+			AvroFlumeEvent event = new AvroFlumeEvent();
+			event.setHeaders(headers);
+			event.setBody(ByteBuffer.wrap(("2012-10-12 10:00:00.000 [main] INFO  c.e.w.LoginController - User "
+				+ "alice logged in from 10.1.2.3 " + i).getBytes()));
+			batch.add(event);
+		}
+		encodedBatch = new EncodedBatch(batch);
+		try {
+			encodedBatch.getEncoded();
+		} catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private int write(DatumWriter<List<AvroFlumeEvent>> writer) throws IOException {
+		bytes.reset();
+		encoder = EncoderFactory.get().binaryEncoder(bytes, encoder);
+		writer.write(batch, encoder);
+		encoder.flush();
+		return bytes.size();
+	}
+
+	@Benchmark
+	public int specificWriter() throws IOException {
+		return write(specific);
+	}
+
+	@Benchmark
+	public int flumeWriter() throws IOException {
+		return write(flume);
+	}
+
+	@Benchmark
+	public int encodedResend() throws IOException {
+		bytes.reset();
+		encoder = EncoderFactory.get().binaryEncoder(bytes, encoder);
+		encoder.writeFixed(encodedBatch.getEncoded());
+		encoder.flush();
+		return bytes.size();
+	}
+}
@@ -0,0 +1,38 @@
+package com.youmag.logback.appenders.flume;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Event id generation, alone and with several logging threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UUIDBenchmark {
+
+	@Benchmark
+	public String timeBasedId() {
+		return UUIDUtil.getTimeBasedId();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String timeBasedIdContended() {
+		return UUIDUtil.getTimeBasedId();
+	}
+
+	@Benchmark
+	public String compactTimeBasedId() {
+		return UUIDUtil.getCompactTimeBasedId();
+	}
+
+	@Benchmark
+	public String timeBasedUUIDToString() {
+		return UUIDUtil.getTimeBasedUUID().toString();
+	}
+}
@@ -17,10 +17,13 @@
 package com.youmag.logback.appenders.flume;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.management.ObjectName;
+
 public abstract class AbstractFlumeManager {
     private static final Lock LOCK = new ReentrantLock();
     // Need to lock that map instead of using a ConcurrentMap due to stop removing the
@@ -31,6 +34,8 @@ public abstract class AbstractFlumeManager {
      */
     private int count = 0;
     private final String name;
+    private final ManagerMetrics metrics = new ManagerMetrics();
+    private ObjectName objectName = null;
 
     protected AbstractFlumeManager(final String name) {
         this.name = name;
@@ -57,8 +62,10 @@ public abstract class AbstractFlumeManager {
                     throw new IllegalStateException("Unable to create a manager");
                 }
                 MAP.put(name, manager);
+                ((AbstractFlumeManager) manager).objectName = Jmx.register("Manager", name,
+                    manager.getMetrics());
             }
-            manager.count++;
+            ((AbstractFlumeManager) manager).count++;
             return manager;
         } finally {
             LOCK.unlock();
@@ -103,6 +110,8 @@ public abstract class AbstractFlumeManager {
             if (count <= 0) {
                 MAP.remove(name);
                 releaseSub();
+                Jmx.unregister(objectName);
+                objectName = null;
             }
         } finally {
             LOCK.unlock();
@@ -117,6 +126,14 @@ public abstract class AbstractFlumeManager {
         return name;
     }
 
+    /**
+     * Returns the metrics of the Manager, also published over JMX while the Manager is in use.
+     * @return The metrics.
+     */
+    public ManagerMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Provide a description of the content format supported by this Manager.  Default implementation returns an empty (unspecified) Map.
      *
@@ -129,4 +146,17 @@ public abstract class AbstractFlumeManager {
     
     public abstract void send(FlumeEvent event, int delay, int retries);
 
+    /**
+     * Send several events at once. Managers that can write a batch in a single operation should override this,
+     * the default implementation sends the events one by one.
+     * @param events The events to send.
+     * @param delay The delay between retries.
+     * @param retries The number of retries.
+     */
+    public void send(final List<FlumeEvent> events, final int delay, final int retries) {
+        for (final FlumeEvent event : events) {
+            send(event, delay, retries);
+        }
+    }
+
 }
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the agent each request of a FlumeAvroManager is sent to.
+ */
+public abstract class AgentSelector {
+    /** Send everything to the current agent and only move on when it fails. */
+    public static final String FAILOVER = "failover";
+    /** Cycle through the available agents. */
+    public static final String ROUND_ROBIN = "roundRobin";
+    /** Pick an available agent at random. */
+    public static final String RANDOM = "random";
+    /** Pick at random, weighting each available agent by the inverse of its average round trip time. */
+    public static final String LEAST_LATENCY = "leastLatency";
+
+    /**
+     * Returns a new AgentSelector.
+     * @param name One of failover, roundRobin, random or leastLatency. Defaults to failover.
+     * @return The AgentSelector.
+     */
+    public static AgentSelector forName(final String name) {
+        if (ROUND_ROBIN.equalsIgnoreCase(name)) {
+            return new RoundRobin();
+        }
+        if (RANDOM.equalsIgnoreCase(name)) {
+            return new RandomSelector();
+        }
+        if (LEAST_LATENCY.equalsIgnoreCase(name)) {
+            return new LeastLatency();
+        }
+        return new Failover();
+    }
+
+    /**
+     * @return true if requests are spread over several agents, which must then all be connected.
+     */
+    public boolean isBalancing() {
+        return true;
+    }
+
+    /**
+     * Choose an agent.
+     * @param connections The connections to the configured agents.
+     * @param current The index of the agent that last accepted a request.
+     * @return The index of the connection to use.
+     */
+    public abstract int select(List<AvroAgentConnection> connections, int current);
+
+    /**
+     * Collect the available connections in a single pass: availability changes concurrently, on the I/O and
+     * health-check threads, so it must not be read twice.
+     * @param connections The connections.
+     * @param available Receives the indexes of the available connections.
+     * @return The number of available connections.
+     */
+    private static int collectAvailable(final List<AvroAgentConnection> connections, final int[] available) {
+        int count = 0;
+        for (int i = 0; i < available.length; ++i) {
+            if (connections.get(i).isAvailable()) {
+                available[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    private static class Failover extends AgentSelector {
+        @Override
+        public boolean isBalancing() {
+            return false;
+        }
+
+        @Override
+        public int select(final List<AvroAgentConnection> connections, final int current) {
+            return current;
+        }
+    }
+
+    private static class RoundRobin extends AgentSelector {
+        private final AtomicInteger next = new AtomicInteger(0);
+
+        @Override
+        public int select(final List<AvroAgentConnection> connections, final int current) {
+            final int[] available = new int[connections.size()];
+            final int count = collectAvailable(connections, available);
+            if (count == 0) {
+                return current;
+            }
+            return available[(next.getAndIncrement() & Integer.MAX_VALUE) % count];
+        }
+    }
+
+    private static class RandomSelector extends AgentSelector {
+        private final Random random = new Random();
+
+        @Override
+        public int select(final List<AvroAgentConnection> connections, final int current) {
+            final int[] available = new int[connections.size()];
+            final int count = collectAvailable(connections, available);
+            if (count == 0) {
+                return current;
+            }
+            return available[random.nextInt(count)];
+        }
+    }
+
+    private static class LeastLatency extends AgentSelector {
+        /** Floor for the latency estimate so that a very fast agent does not take all the traffic. */
+        private static final double MIN_LATENCY_MILLIS = 0.1;
+
+        private final Random random = new Random();
+
+        @Override
+        public int select(final List<AvroAgentConnection> connections, final int current) {
+            double total = 0;
+            final double[] weights = new double[connections.size()];
+            for (int i = 0; i < weights.length; ++i) {
+                final AvroAgentConnection connection = connections.get(i);
+                if (connection.isAvailable()) {
+                    weights[i] = 1.0 / Math.max(MIN_LATENCY_MILLIS, connection.getAverageLatencyMillis());
+                    total += weights[i];
+                }
+            }
+            if (total == 0) {
+                return current;
+            }
+            double pick = random.nextDouble() * total;
+            int last = current;
+            for (int i = 0; i < weights.length; ++i) {
+                if (weights[i] > 0) {
+                    pick -= weights[i];
+                    if (pick <= 0) {
+                        return i;
+                    }
+                    last = i;
+                }
+            }
+            // Rounding left a little of the pick: the last weighted agent was available when weighted.
+            return last;
+        }
+    }
+}
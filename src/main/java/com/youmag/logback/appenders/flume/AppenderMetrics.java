@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Counters of a FlumeAppender: what the logging threads handed over, what was dropped and, in async mode,
+ * how full the buffer is.
+ */
+public final class AppenderMetrics implements AppenderMetricsMBean {
+    private final StripedCounter eventsIn = new StripedCounter();
+    private final StripedCounter bytesIn = new StripedCounter();
+    private final DropCounter dropped;
+    private volatile AsyncSender sender = null;
+
+    /**
+     * Constructor.
+     * @param dropped The drop counts of the appender.
+     */
+    public AppenderMetrics(final DropCounter dropped) {
+        this.dropped = dropped;
+    }
+
+    /**
+     * @param bytes The size of the body of an event appended.
+     */
+    public void recordEvent(final int bytes) {
+        eventsIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * @param sender The sender whose buffer is reported, null in synchronous mode.
+     */
+    public void setSender(final AsyncSender sender) {
+        this.sender = sender;
+    }
+
+    public long getEventsIn() {
+        return eventsIn.get();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public int getQueueSize() {
+        final AsyncSender s = sender;
+        return s == null ? 0 : s.getQueueSize();
+    }
+
+    public int getQueueCapacity() {
+        final AsyncSender s = sender;
+        return s == null ? 0 : s.getQueueCapacity();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getDroppedDebug() {
+        return dropped.get(Level.DEBUG) + dropped.get(Level.TRACE);
+    }
+
+    public long getDroppedInfo() {
+        return dropped.get(Level.INFO);
+    }
+
+    public long getDroppedWarn() {
+        return dropped.get(Level.WARN);
+    }
+
+    public long getDroppedError() {
+        return dropped.get(Level.ERROR);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.core.spi.ContextAware;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands events from the logging threads to a manager through a {@link RingBuffer}. A single daemon thread
+ * drains the buffer so that slow or unavailable agents never stall the caller. What happens when the buffer is
+ * full is decided by an {@link OverflowPolicy}. With a {@link FormatStage}, events are queued unformatted and
+ * formatted in parallel once drained.
+ */
+public class AsyncSender implements Runnable {
+    /** The largest number of events handed to the manager in one call. */
+    private static final int MAX_DRAIN = 256;
+
+    private final RingBuffer<FlumeEvent> queue;
+    private final WaitStrategy notEmpty;
+    private final WaitStrategy notFull;
+    private final AbstractFlumeManager manager;
+    private final ContextAware status;
+    private final OverflowPolicy policy;
+    private final DropCounter dropped;
+    private final FormatStage formatter;
+    private final AtomicBoolean warned = new AtomicBoolean(false);
+    private final int delay;
+    private final int retries;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * Constructor.
+     * @param name The name of the owning appender, used to name the sender thread.
+     * @param manager The manager events are sent to.
+     * @param capacity The capacity of the ring buffer.
+     * @param waitStrategy The name of the {@link WaitStrategy} used by both the sender and blocked producers.
+     * @param delay The reconnect delay passed to the manager.
+     * @param retries The number of retries passed to the manager.
+     * @param policy What to do when the buffer is full.
+     * @param dropped Counts the events that are dropped or fail to be sent.
+     * @param status Where send errors are reported.
+     */
+    public AsyncSender(final String name, final AbstractFlumeManager manager, final int capacity,
+                       final String waitStrategy, final int delay, final int retries, final OverflowPolicy policy,
+                       final DropCounter dropped, final ContextAware status) {
+        this(name, manager, capacity, waitStrategy, delay, retries, policy, dropped, status, null);
+    }
+
+    /**
+     * Constructor.
+     * @param name The name of the owning appender, used to name the sender thread.
+     * @param manager The manager events are sent to.
+     * @param capacity The capacity of the ring buffer.
+     * @param waitStrategy The name of the {@link WaitStrategy} used by both the sender and blocked producers.
+     * @param delay The reconnect delay passed to the manager.
+     * @param retries The number of retries passed to the manager.
+     * @param policy What to do when the buffer is full.
+     * @param dropped Counts the events that are dropped or fail to be sent.
+     * @param status Where send errors are reported.
+     * @param formatter Formats the drained events before they are sent, null if they are queued formatted.
+     */
+    public AsyncSender(final String name, final AbstractFlumeManager manager, final int capacity,
+                       final String waitStrategy, final int delay, final int retries, final OverflowPolicy policy,
+                       final DropCounter dropped, final ContextAware status, final FormatStage formatter) {
+        this.formatter = formatter;
+        this.queue = new RingBuffer<FlumeEvent>(capacity);
+        this.notEmpty = WaitStrategy.forName(waitStrategy);
+        this.notFull = WaitStrategy.forName(waitStrategy);
+        this.manager = manager;
+        this.delay = delay;
+        this.retries = retries;
+        this.policy = policy;
+        this.dropped = dropped;
+        this.status = status;
+        this.thread = new Thread(this, "FlumeAsyncSender-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the sender thread once the buffer has been drained.
+     * @param timeoutMillis How long to wait for the buffer to drain.
+     */
+    public void stop(final long timeoutMillis) {
+        running = false;
+        notEmpty.signalAll();
+        try {
+            thread.join(timeoutMillis);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            status.addWarn("Flume sender " + thread.getName() + " did not drain " + queue.size() +
+                " events within " + timeoutMillis + "ms");
+        }
+        if (formatter != null) {
+            formatter.stop();
+        }
+        if (dropped.get() > 0) {
+            status.addWarn("Flume sender " + thread.getName() + " dropped " + dropped.get() + " events");
+        }
+    }
+
+    /**
+     * Adds an event to the buffer, applying the overflow policy if it is full.
+     * @param event The event to send.
+     */
+    public void enqueue(final FlumeEvent event) {
+        policy.enqueue(this, event);
+    }
+
+    /**
+     * Adds an event to the buffer. Once the sender is stopped the event is sent directly instead.
+     * @param event The event to send.
+     * @param timeoutMillis How long to wait for room: 0 not to wait, a negative value to wait indefinitely.
+     * @return false if the buffer remained full.
+     */
+    boolean offer(final FlumeEvent event, final long timeoutMillis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMillis));
+        int counter = 0;
+        while (!queue.offer(event)) {
+            if (!running) {
+                send(event);
+                return true;
+            }
+            if (timeoutMillis == 0 || (timeoutMillis > 0 && System.nanoTime() - deadline >= 0)) {
+                return false;
+            }
+            counter = notFull.idle(counter);
+        }
+        notEmpty.signalAll();
+        return true;
+    }
+
+    /**
+     * Gives up on an event.
+     * @param event The event.
+     */
+    void drop(final FlumeEvent event) {
+        dropped.record(event);
+        if (warned.compareAndSet(false, true)) {
+            status.addWarn("Flume sender " + thread.getName() + " cannot keep up, dropping events");
+        }
+    }
+
+    /**
+     * Gives up on the oldest queued event.
+     */
+    void dropOldest() {
+        final FlumeEvent oldest = queue.poll();
+        if (oldest != null) {
+            drop(oldest);
+        }
+    }
+
+    /**
+     * @return true if events are queued unformatted, to be formatted by the {@link FormatStage}.
+     */
+    public boolean isFormatting() {
+        return formatter != null;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    public void run() {
+        final List<FlumeEvent> events = new ArrayList<FlumeEvent>(MAX_DRAIN);
+        int counter = 0;
+        while (running) {
+            if (queue.drainTo(events, MAX_DRAIN) == 0) {
+                counter = notEmpty.idle(counter);
+                continue;
+            }
+            counter = 0;
+            notFull.signalAll();
+            send(events);
+        }
+        while (queue.drainTo(events, MAX_DRAIN) > 0) {
+            send(events);
+        }
+    }
+
+    private void send(final List<FlumeEvent> events) {
+        if (formatter != null) {
+            formatter.format(events);
+            if (events.isEmpty()) {
+                return;
+            }
+        }
+        try {
+            manager.send(events, delay, retries);
+        } catch (final RuntimeException ex) {
+            status.addError("Unable to send " + events.size() + " events to Flume", ex);
+            for (final FlumeEvent event : events) {
+                dropped.record(event);
+            }
+        }
+        events.clear();
+    }
+
+    private void send(final FlumeEvent event) {
+        if (formatter != null) {
+            final List<FlumeEvent> events = new ArrayList<FlumeEvent>(1);
+            events.add(event);
+            send(events);
+            return;
+        }
+        try {
+            manager.send(event, delay, retries);
+        } catch (final RuntimeException ex) {
+            status.addError("Unable to send event to Flume", ex);
+            dropped.record(event);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.CallFuture;
+import org.apache.avro.ipc.Callback;
+import org.apache.avro.ipc.NettyTransceiver;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.apache.flume.source.avro.AvroSourceProtocol;
+import org.apache.flume.source.avro.Status;
+import org.jboss.netty.channel.ChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The connection of a FlumeAvroManager to one agent. Requests may be sent synchronously or pipelined: up to
+ * maxInFlight asynchronous requests can be outstanding at once, each failing if it is not acknowledged within
+ * the request timeout.
+ */
+public class AvroAgentConnection {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvroAgentConnection.class);
+
+    /** Weight of the latest sample in the latency average. */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    /** Closes transceivers whose handshake takes longer than the connect timeout. */
+    private static final ScheduledExecutorService HANDSHAKE_TIMER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "FlumeAvroHandshakeTimer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private final FlumeAgent agent;
+    private final FlumeAvroConfig config;
+    private final ManagerMetrics metrics;
+    private final ChannelFactory channelFactory;
+    private final Semaphore window;
+    private final Set<Request> outstanding =
+        Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+    private final CircuitBreaker breaker;
+    private final AtomicLong averageLatency = new AtomicLong(Double.doubleToLongBits(0));
+    private volatile NettyTransceiver transceiver;
+    private volatile AvroSourceProtocol.Callback client;
+
+    /**
+     * Constructor.
+     * @param agent The agent to connect to.
+     * @param config The connection settings.
+     * @param metrics Where round trip times are recorded.
+     * @param channelFactory The transport, shared with the other connections.
+     */
+    public AvroAgentConnection(final FlumeAgent agent, final FlumeAvroConfig config, final ManagerMetrics metrics,
+                               final ChannelFactory channelFactory) {
+        this.agent = agent;
+        this.config = config;
+        this.metrics = metrics;
+        this.channelFactory = config.isDeflate() ?
+            new CompressionChannelFactory(channelFactory, config.getCompressionLevel()) : channelFactory;
+        this.window = new Semaphore(config.getMaxInFlight());
+        this.breaker = new CircuitBreaker(config.getRetries(), config.getReconnectDelay());
+    }
+
+    public FlumeAgent getAgent() {
+        return agent;
+    }
+
+    /**
+     * @return true if requests may be routed to this agent.
+     */
+    public boolean isAvailable() {
+        return breaker.isClosed() && isConnected();
+    }
+
+    /**
+     * Record a successful request.
+     */
+    public void recordSuccess() {
+        breaker.recordSuccess();
+    }
+
+    /**
+     * Record a failed request, opening the breaker if the agent keeps failing or the connection is gone.
+     * @param error The cause of the failure.
+     */
+    public void recordFailure(final Throwable error) {
+        final long now = System.currentTimeMillis();
+        if (!isConnected()) {
+            breaker.trip(now);
+        } else if (breaker.recordFailure(now)) {
+            LOGGER.warn("Too many failures, no longer sending to " + this, error);
+        }
+    }
+
+    /**
+     * Reconnect if needed and check that the agent answers, called by the health checker only. Does nothing
+     * while the breaker is open and its wait period has not elapsed, or if the agent is healthy.
+     * @param now The current time in milliseconds.
+     * @return true if the agent became available.
+     */
+    public boolean probe(final long now) {
+        if (isAvailable()) {
+            return false;
+        }
+        if (!breaker.isClosed() && !breaker.isProbeDue(now)) {
+            return false;
+        }
+        try {
+            if (!connect()) {
+                throw new IOException("Unable to connect to " + this);
+            }
+            // An empty batch is accepted by the avro source without touching its channel.
+            send(null, Collections.<AvroFlumeEvent>emptyList());
+            breaker.recordSuccess();
+            return true;
+        } catch (final Exception ex) {
+            breaker.trip(now);
+            LOGGER.debug("Probe of " + this + " failed", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Fold a round trip time into the exponentially weighted moving average.
+     * @param nanos The round trip time of a request.
+     */
+    public void recordLatency(final long nanos) {
+        metrics.recordLatency(nanos);
+        final double millis = nanos / 1000000.0;
+        for (;;) {
+            final long bits = averageLatency.get();
+            final double average = Double.longBitsToDouble(bits);
+            final double updated = average == 0 ? millis : average + LATENCY_WEIGHT * (millis - average);
+            if (averageLatency.compareAndSet(bits, Double.doubleToLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The moving average of the round trip time in milliseconds, 0 until a request completed.
+     */
+    public double getAverageLatencyMillis() {
+        return Double.longBitsToDouble(averageLatency.get());
+    }
+
+    public boolean isConnected() {
+        final NettyTransceiver t = transceiver;
+        return client != null && t != null && t.isConnected();
+    }
+
+    /**
+     * Connect to the agent unless already connected.
+     * @return true if the connection is usable.
+     */
+    public synchronized boolean connect() {
+        if (isConnected()) {
+            return true;
+        }
+        close();
+        try {
+            transceiver = new NettyTransceiver(new InetSocketAddress(agent.getHost(), agent.getPort()),
+                channelFactory, config.getConnectTimeout());
+        } catch (final IOException ioe) {
+            LOGGER.error("Unable to create transceiver for " + this, ioe);
+            return false;
+        }
+        try {
+            client = SpecificRequestor.getClient(AvroSourceProtocol.Callback.class,
+                new FlumeRequestor(AvroSourceProtocol.Callback.class, transceiver));
+        } catch (final IOException ioe) {
+            LOGGER.error("Unable to create Avro client for " + this, ioe);
+            close();
+            return false;
+        }
+        // The handshake waits for the agent's answer without any timeout, closing the transceiver fails it.
+        final NettyTransceiver t = transceiver;
+        final ScheduledFuture<?> watchdog = HANDSHAKE_TIMER.schedule(new Runnable() {
+            public void run() {
+                t.close();
+            }
+        }, config.getConnectTimeout(), TimeUnit.MILLISECONDS);
+        try {
+            // The transceiver only reports itself connected once the Avro handshake, done with the first
+            // request, has completed. An empty batch is accepted without touching the source's channel.
+            send(null, Collections.<AvroFlumeEvent>emptyList());
+            return true;
+        } catch (final Exception ex) {
+            LOGGER.error("Handshake with " + this + " failed", ex);
+            close();
+            return false;
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    /**
+     * Send synchronously, waiting at most the request timeout for the acknowledgement.
+     * @param event The event to send when batch is null.
+     * @param batch The events to send.
+     * @throws Exception if the agent is unreachable or does not accept the events.
+     */
+    public void send(final AvroFlumeEvent event, final List<AvroFlumeEvent> batch) throws Exception {
+        final AvroSourceProtocol.Callback c = client;
+        if (c == null) {
+            throw new IOException("Not connected to " + this);
+        }
+        final long start = System.nanoTime();
+        final CallFuture<Status> future = new CallFuture<Status>();
+        if (batch == null) {
+            c.append(event, future);
+        } else {
+            c.appendBatch(batch, future);
+        }
+        final Status status = future.get(config.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        recordLatency(System.nanoTime() - start);
+        if (!status.equals(Status.OK)) {
+            throw new AvroRemoteException("RPC communication failed to " + this);
+        }
+    }
+
+    /**
+     * Send without waiting for the acknowledgement. Blocks only while maxInFlight requests are outstanding.
+     * The callback is invoked exactly once, from a Netty I/O thread or from {@link #expire(long)}.
+     * @param event The event to send when batch is null.
+     * @param batch The events to send.
+     * @param callback Notified of the outcome.
+     */
+    public void sendAsync(final AvroFlumeEvent event, final List<AvroFlumeEvent> batch,
+                          final Callback<Status> callback) {
+        final AvroSourceProtocol.Callback c = client;
+        final long timeout = config.getRequestTimeout();
+        final Request request = new Request(callback, System.currentTimeMillis() + timeout);
+        try {
+            if (c == null) {
+                throw new IOException("Not connected to " + this);
+            }
+            if (!window.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Too many requests in flight to " + this);
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            request.handleError(ex);
+            return;
+        } catch (final Exception ex) {
+            request.handleError(ex);
+            return;
+        }
+        request.permit = true;
+        outstanding.add(request);
+        try {
+            if (batch == null) {
+                c.append(event, request);
+            } else {
+                c.appendBatch(batch, request);
+            }
+        } catch (final IOException ex) {
+            request.handleError(ex);
+        }
+    }
+
+    /**
+     * Fail the asynchronous requests that have waited longer than the request timeout.
+     * @param now The current time in milliseconds.
+     */
+    public void expire(final long now) {
+        for (final Request request : outstanding) {
+            if (request.deadline <= now) {
+                request.handleError(new TimeoutException("No acknowledgement from " + this + " after " +
+                    config.getRequestTimeout() + "ms"));
+            }
+        }
+    }
+
+    /**
+     * Wait for outstanding asynchronous requests to be acknowledged.
+     * @param timeoutMillis The maximum time to wait.
+     */
+    public void awaitOutstanding(final long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!outstanding.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public int getInFlight() {
+        return outstanding.size();
+    }
+
+    public synchronized void close() {
+        final NettyTransceiver t = transceiver;
+        transceiver = null;
+        client = null;
+        if (t != null) {
+            t.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return agent.getHost() + ":" + agent.getPort();
+    }
+
+    /**
+     * An asynchronous request. Guarantees the caller's callback runs once, whichever of the acknowledgement,
+     * the error or the timeout comes first.
+     */
+    private class Request implements Callback<Status> {
+        private final Callback<Status> callback;
+        private final long deadline;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean permit = false;
+
+        public Request(final Callback<Status> callback, final long deadline) {
+            this.callback = callback;
+            this.deadline = deadline;
+        }
+
+        private boolean complete() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            outstanding.remove(this);
+            if (permit) {
+                window.release();
+            }
+            return true;
+        }
+
+        public void handleResult(final Status status) {
+            if (complete()) {
+                recordLatency(System.nanoTime() - start);
+                callback.handleResult(status);
+            }
+        }
+
+        public void handleError(final Throwable error) {
+            if (complete()) {
+                callback.handleError(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Encodes logging events as Avro binary records of {@link #SCHEMA} instead of formatted text: the fields are
+ * written as they are, without layout formatting, and consumers read them back without parsing. The record
+ * is written field by field straight to the output stream with a reused encoder, no intermediate record
+ * object is built. Used as the encoder of a FlumeAppender, every event carries the schema fingerprint in its
+ * {@link #FINGERPRINT_HEADER} header.
+ */
+public class AvroLoggingEventEncoder extends EncoderBase<ILoggingEvent> {
+    /** Header holding the fingerprint of the schema of the body. */
+    public static final String FINGERPRINT_HEADER = "schemaFingerprint";
+
+    /** The schema of the bodies. */
+    public static final Schema SCHEMA = new Schema.Parser().parse(
+        "{\"type\": \"record\", \"name\": \"LoggingEvent\", \"namespace\": \"com.youmag.logback.appenders.flume\","
+        + " \"fields\": ["
+        + "{\"name\": \"timestamp\", \"type\": \"long\"},"
+        + "{\"name\": \"level\", \"type\": \"string\"},"
+        + "{\"name\": \"logger\", \"type\": \"string\"},"
+        + "{\"name\": \"thread\", \"type\": \"string\"},"
+        + "{\"name\": \"message\", \"type\": [\"null\", \"string\"]},"
+        + "{\"name\": \"args\", \"type\": {\"type\": \"array\", \"items\": \"string\"}},"
+        + "{\"name\": \"mdc\", \"type\": {\"type\": \"map\", \"values\": \"string\"}},"
+        + "{\"name\": \"throwable\", \"type\": [\"null\", \"string\"]}"
+        + "]}");
+
+    /** The 64 bit Rabin fingerprint of the canonical form of the schema, in hexadecimal. */
+    public static final String FINGERPRINT = String.format("%016x", SchemaNormalization.parsingFingerprint64(SCHEMA));
+
+    private BinaryEncoder encoder;
+
+    @Override
+    public void init(final OutputStream os) throws IOException {
+        super.init(os);
+        encoder = EncoderFactory.get().directBinaryEncoder(os, encoder);
+    }
+
+    public void doEncode(final ILoggingEvent event) throws IOException {
+        encoder.writeLong(event.getTimeStamp());
+        encoder.writeString(FlumeDatumWriter.encodeKey(event.getLevel().levelStr));
+        encoder.writeString(event.getLoggerName());
+        encoder.writeString(event.getThreadName());
+        writeNullable(event.getMessage());
+
+        final Object[] args = event.getArgumentArray();
+        encoder.writeArrayStart();
+        encoder.setItemCount(args == null ? 0 : args.length);
+        if (args != null) {
+            for (final Object arg : args) {
+                encoder.startItem();
+                encoder.writeString(String.valueOf(arg));
+            }
+        }
+        encoder.writeArrayEnd();
+
+        final Map<String, String> mdc = event.getMDCPropertyMap();
+        encoder.writeMapStart();
+        encoder.setItemCount(mdc == null ? 0 : mdc.size());
+        if (mdc != null) {
+            for (final Map.Entry<String, String> entry : mdc.entrySet()) {
+                encoder.startItem();
+                encoder.writeString(FlumeDatumWriter.encodeKey(entry.getKey()));
+                encoder.writeString(String.valueOf(entry.getValue()));
+            }
+        }
+        encoder.writeMapEnd();
+
+        final IThrowableProxy throwable = event.getThrowableProxy();
+        writeNullable(throwable == null ? null : ThrowableProxyUtil.asString(throwable));
+    }
+
+    private void writeNullable(final String value) throws IOException {
+        if (value == null) {
+            encoder.writeIndex(0);
+            encoder.writeNull();
+        } else {
+            encoder.writeIndex(1);
+            encoder.writeString(value);
+        }
+    }
+
+    public void close() throws IOException {
+        encoder.flush();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.flume.source.avro.AvroFlumeEvent;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Accumulates the batches of a FlumeAvroManager without a shared lock: each logging thread appends to one of
+ * several independent batches, chosen by its thread id. Completed batches are queued in the order they were
+ * completed and sent in bulk by whichever thread holds the manager's lock. The events of a thread keep their
+ * order, events of different threads may be sent in a different order than they were logged.
+ */
+final class BatchStripes {
+    private final FlumeAvroManager.EventList[] stripes;
+    private final Queue<List<AvroFlumeEvent>> ready = new ConcurrentLinkedQueue<List<AvroFlumeEvent>>();
+
+    /**
+     * Constructor.
+     * @param count The number of stripes.
+     * @param batchSize The number of events that completes the batch of a stripe.
+     * @param batchBytes The accumulated body size that completes the batch of a stripe, 0 for no limit.
+     */
+    public BatchStripes(final int count, final int batchSize, final long batchBytes) {
+        stripes = new FlumeAvroManager.EventList[Math.max(1, count)];
+        for (int i = 0; i < stripes.length; ++i) {
+            stripes[i] = new FlumeAvroManager.EventList(batchSize, batchBytes);
+        }
+    }
+
+    /**
+     * Add an event to the batch of the calling thread's stripe.
+     * @param event The event.
+     * @param size The size of its body.
+     * @return true if this completed a batch, which must then be sent.
+     */
+    public boolean add(final AvroFlumeEvent event, final int size) {
+        final FlumeAvroManager.EventList stripe =
+            stripes[(int) ((Thread.currentThread().getId() & Long.MAX_VALUE) % stripes.length)];
+        synchronized (stripe) {
+            final List<AvroFlumeEvent> batch = stripe.addAndGet(event, size);
+            if (batch == null) {
+                return false;
+            }
+            ready.add(batch);
+            return true;
+        }
+    }
+
+    /**
+     * Complete the batches whose first event has waited at least lingerMillis.
+     * @param lingerMillis The minimum age of the batches to complete, 0 for all of them.
+     * @return true if a batch was completed.
+     */
+    public boolean completeOlderThan(final long lingerMillis) {
+        boolean completed = false;
+        for (final FlumeAvroManager.EventList stripe : stripes) {
+            synchronized (stripe) {
+                final List<AvroFlumeEvent> batch = stripe.getIfOlderThan(lingerMillis);
+                if (batch != null) {
+                    ready.add(batch);
+                    completed = true;
+                }
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return The oldest completed batch, null if there is none.
+     */
+    public List<AvroFlumeEvent> poll() {
+        return ready.poll();
+    }
+
+    /**
+     * @return The number of stripes.
+     */
+    public int getCount() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+/**
+ * Tracks the health of one agent. After failureThreshold consecutive failures the breaker opens and the agent
+ * receives no traffic; once openMillis have passed the health checker may probe it, and a successful probe
+ * closes the breaker again.
+ */
+public final class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openMillis;
+    private int failures = 0;
+    private volatile boolean open = false;
+    private long openedAt = 0;
+
+    /**
+     * Constructor.
+     * @param failureThreshold The number of consecutive failures that opens the breaker.
+     * @param openMillis How long the breaker stays open before the agent may be probed.
+     */
+    public CircuitBreaker(final int failureThreshold, final long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return true if requests may be sent.
+     */
+    public boolean isClosed() {
+        return !open;
+    }
+
+    /**
+     * @param now The current time in milliseconds.
+     * @return true if the breaker is open and has been for long enough to try the agent again.
+     */
+    public synchronized boolean isProbeDue(final long now) {
+        return open && now - openedAt >= openMillis;
+    }
+
+    public synchronized void recordSuccess() {
+        failures = 0;
+        open = false;
+    }
+
+    /**
+     * @param now The current time in milliseconds.
+     * @return true if this failure opened the breaker.
+     */
+    public synchronized boolean recordFailure(final long now) {
+        ++failures;
+        if (open) {
+            // A failed probe, wait another period.
+            openedAt = now;
+            return false;
+        }
+        if (failures >= failureThreshold) {
+            open = true;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Open the breaker immediately, for failures that leave no doubt such as a lost connection.
+     * @param now The current time in milliseconds.
+     */
+    public synchronized void trip(final long now) {
+        failures = Math.max(failures, failureThreshold);
+        open = true;
+        openedAt = now;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The envelope format of coalesced events, and its decoder for the sink side. A coalesced event carries the
+ * bodies of several log lines that shared the same headers, each preceded by its length as a 4 byte big
+ * endian integer, and a {@link #COUNT} header holding the number of lines. Its timeStamp and guId headers
+ * are those of the first line. This class only depends on the JDK so that it can be copied into sinks and
+ * interceptors.
+ */
+public final class CoalescedEvents {
+    /** Header holding the number of log lines in a coalesced event. */
+    public static final String COUNT = "coalesced";
+
+    /** Size of the length that precedes each line. */
+    static final int LENGTH_SIZE = 4;
+
+    private CoalescedEvents() {
+    }
+
+    /**
+     * @param headers The headers of an event.
+     * @return true if the event is a coalesced one.
+     */
+    public static boolean isCoalesced(final Map<String, String> headers) {
+        return headers.containsKey(COUNT);
+    }
+
+    /**
+     * Returns the log lines of an event.
+     * @param headers The headers of the event.
+     * @param body The body of the event.
+     * @return The bodies of the lines in the coalesced event, or the body alone if it is not coalesced.
+     * @throws IllegalArgumentException if the envelope is truncated or does not match its count.
+     */
+    public static List<byte[]> decode(final Map<String, String> headers, final byte[] body) {
+        final String count = headers.get(COUNT);
+        if (count == null) {
+            return Collections.singletonList(body);
+        }
+        final int expected;
+        try {
+            expected = Integer.parseInt(count);
+        } catch (final NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + COUNT + " header: " + count, ex);
+        }
+        return decode(body, expected);
+    }
+
+    /**
+     * Splits an envelope into its lines.
+     * @param body The body of a coalesced event.
+     * @param expected The number of lines announced by its header, -1 if unknown.
+     * @return The bodies of the lines.
+     * @throws IllegalArgumentException if the envelope is truncated or does not match the count.
+     */
+    public static List<byte[]> decode(final byte[] body, final int expected) {
+        final List<byte[]> lines = new ArrayList<byte[]>(expected > 0 ? expected : 16);
+        int position = 0;
+        while (position < body.length) {
+            if (body.length - position < LENGTH_SIZE) {
+                throw new IllegalArgumentException("Truncated envelope at byte " + position);
+            }
+            final int length = ((body[position] & 0xff) << 24) | ((body[position + 1] & 0xff) << 16) |
+                ((body[position + 2] & 0xff) << 8) | (body[position + 3] & 0xff);
+            position += LENGTH_SIZE;
+            if (length < 0 || length > body.length - position) {
+                throw new IllegalArgumentException("Invalid line length " + length + " at byte " + position);
+            }
+            final byte[] line = new byte[length];
+            System.arraycopy(body, position, line, 0, length);
+            lines.add(line);
+            position += length;
+        }
+        if (expected >= 0 && lines.size() != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " lines, found " + lines.size());
+        }
+        return lines;
+    }
+
+    /**
+     * Appends a line to an envelope.
+     * @param envelope The envelope being built.
+     * @param line The body of the line.
+     */
+    static void append(final Utf8Buffer envelope, final byte[] line) {
+        final int length = line.length;
+        envelope.write(length >>> 24);
+        envelope.write(length >>> 16);
+        envelope.write(length >>> 8);
+        envelope.write(length);
+        envelope.write(line, 0, length);
+    }
+}
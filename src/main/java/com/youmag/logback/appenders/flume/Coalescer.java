@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.flume.source.avro.AvroFlumeEvent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the log lines that share the same headers, apart from those that differ on every line, into coalesced
+ * events in the envelope format of {@link CoalescedEvents}. A coalesced event is complete when it holds
+ * maxLines lines or maxBytes of bodies, when it is the oldest of too many open events, or once it has
+ * waited long enough. Lines with the same headers keep their order. Each manager, and so each lane, has its
+ * own coalescer.
+ */
+final class Coalescer {
+    /** Bound on the number of coalesced events being filled at once. */
+    static final int MAX_OPEN = 256;
+
+    private final int maxLines;
+    private final int maxBytes;
+    private final LinkedHashMap<Map<String, String>, Envelope> open =
+        new LinkedHashMap<Map<String, String>, Envelope>();
+
+    /**
+     * Constructor.
+     * @param maxLines The number of lines that completes a coalesced event.
+     * @param maxBytes The size of the bodies that completes a coalesced event.
+     */
+    public Coalescer(final int maxLines, final int maxBytes) {
+        this.maxLines = maxLines;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The headers two lines must share to be coalesced: all but those that differ on every line.
+     */
+    private static Map<String, String> keyOf(final Map<String, String> headers) {
+        final Map<String, String> key = new HashMap<String, String>(headers);
+        key.remove(FlumeEvent.GUID);
+        key.remove(FlumeEvent.TIMESTAMP);
+        key.remove(FlumeLaneManager.SEQUENCE);
+        return key;
+    }
+
+    /**
+     * Adds a line.
+     * @param headers The headers of the line.
+     * @param body Its body.
+     * @return The coalesced events completed by this line: the one evicted to make room for it, then its own,
+     * each if any. Empty if there is none.
+     */
+    public synchronized List<AvroFlumeEvent> add(final Map<String, String> headers, final byte[] body) {
+        final Map<String, String> key = keyOf(headers);
+        Envelope envelope = open.get(key);
+        AvroFlumeEvent evicted = null;
+        if (envelope == null) {
+            if (open.size() >= MAX_OPEN) {
+                final Iterator<Envelope> eldest = open.values().iterator();
+                evicted = eldest.next().complete();
+                eldest.remove();
+            }
+            envelope = new Envelope(headers);
+            open.put(key, envelope);
+        }
+        envelope.add(body);
+        if (envelope.lines >= maxLines || envelope.body.size() >= maxBytes) {
+            open.remove(key);
+            if (evicted == null) {
+                return Collections.singletonList(envelope.complete());
+            }
+            final List<AvroFlumeEvent> completed = new ArrayList<AvroFlumeEvent>(2);
+            completed.add(evicted);
+            completed.add(envelope.complete());
+            return completed;
+        }
+        if (evicted == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(evicted);
+    }
+
+    /**
+     * Completes the coalesced events whose first line has waited at least lingerMillis.
+     * @param lingerMillis The minimum age of the events to complete, 0 for all of them.
+     * @return The completed events, oldest first.
+     */
+    public synchronized List<AvroFlumeEvent> completeOlderThan(final long lingerMillis) {
+        final List<AvroFlumeEvent> completed = new ArrayList<AvroFlumeEvent>();
+        final long now = System.currentTimeMillis();
+        final Iterator<Envelope> envelopes = open.values().iterator();
+        while (envelopes.hasNext()) {
+            final Envelope envelope = envelopes.next();
+            if (now - envelope.firstLineMillis >= lingerMillis) {
+                completed.add(envelope.complete());
+                envelopes.remove();
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * A coalesced event being filled.
+     */
+    private static final class Envelope {
+        private final Map<String, String> headers;
+        private final Utf8Buffer body = new Utf8Buffer();
+        private final long firstLineMillis = System.currentTimeMillis();
+        private int lines = 0;
+
+        public Envelope(final Map<String, String> headers) {
+            this.headers = headers;
+        }
+
+        public void add(final byte[] line) {
+            CoalescedEvents.append(body, line);
+            ++lines;
+        }
+
+        public AvroFlumeEvent complete() {
+            final AvroFlumeEvent event = new AvroFlumeEvent();
+            final Map<CharSequence, CharSequence> eventHeaders = new HashMap<CharSequence, CharSequence>(headers);
+            eventHeaders.put(CoalescedEvents.COUNT, Integer.toString(lines));
+            event.setHeaders(eventHeaders);
+            event.setBody(ByteBuffer.wrap(body.toByteArray()));
+            return event;
+        }
+    }
+}
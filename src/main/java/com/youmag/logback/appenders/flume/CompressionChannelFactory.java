@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.compression.ZlibDecoder;
+import org.jboss.netty.handler.codec.compression.ZlibEncoder;
+
+/**
+ * Wraps a ChannelFactory so that the whole Avro stream is deflate compressed, as expected by an avro source
+ * configured with compression-type=deflate. Compressing the stream rather than each event lets zlib exploit
+ * the redundancy between the similar lines of a batch.
+ */
+public class CompressionChannelFactory implements ChannelFactory {
+    /** No compression. */
+    public static final String NONE = "none";
+    /** Deflate compression of the Avro stream. */
+    public static final String DEFLATE = "deflate";
+
+    private final ChannelFactory delegate;
+    private final int compressionLevel;
+
+    /**
+     * Constructor.
+     * @param delegate The factory creating the actual channels.
+     * @param compressionLevel The zlib compression level, 1 (fastest) to 9 (best).
+     */
+    public CompressionChannelFactory(final ChannelFactory delegate, final int compressionLevel) {
+        this.delegate = delegate;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public Channel newChannel(final ChannelPipeline pipeline) {
+        pipeline.addFirst("deflater", new ZlibEncoder(compressionLevel));
+        pipeline.addFirst("inflater", new ZlibDecoder());
+        return delegate.newChannel(pipeline);
+    }
+
+    public void releaseExternalResources() {
+        delegate.releaseExternalResources();
+    }
+}
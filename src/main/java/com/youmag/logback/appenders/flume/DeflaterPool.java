@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of Deflaters used to GZIP event bodies. Deflaters hold native memory that is only freed by
+ * end() or finalization, so reusing them avoids the allocation churn of a GZIPOutputStream per event.
+ */
+public final class DeflaterPool {
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int TRAILER_SIZE = 8;
+
+    private static final Queue<Deflater> POOL = new ConcurrentLinkedQueue<Deflater>();
+
+    private static final AtomicInteger SIZE = new AtomicInteger(0);
+
+    /** Scratch buffers grown beyond this, for an unusually large body, are not kept. */
+    static final int MAX_SCRATCH = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[4096];
+        }
+    };
+
+    /* This class cannot be instantiated */
+    private DeflaterPool() {
+    }
+
+    /**
+     * Borrow a Deflater producing raw deflate data (no zlib wrapper).
+     * @return A reset Deflater.
+     */
+    public static Deflater borrow() {
+        final Deflater deflater = POOL.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        SIZE.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Give a Deflater back to the pool.
+     * @param deflater The Deflater obtained from {@link #borrow()}.
+     */
+    public static void release(final Deflater deflater) {
+        deflater.reset();
+        if (SIZE.incrementAndGet() > MAX_POOLED) {
+            SIZE.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        POOL.offer(deflater);
+    }
+
+    /**
+     * Compress data in the GZIP format, readable by GZIPInputStream.
+     * @param data The data to compress.
+     * @return The compressed data.
+     */
+    public static byte[] gzip(final byte[] data) {
+        final Deflater deflater = borrow();
+        try {
+            byte[] out = SCRATCH.get();
+            final int bound = GZIP_HEADER.length + data.length + (data.length >> 3) + 64 + TRAILER_SIZE;
+            if (out.length < bound) {
+                out = new byte[bound];
+                keep(out);
+            }
+            System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+            int length = GZIP_HEADER.length;
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == out.length - TRAILER_SIZE) {
+                    out = Arrays.copyOf(out, out.length << 1);
+                    keep(out);
+                }
+                length += deflater.deflate(out, length, out.length - TRAILER_SIZE - length);
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(data);
+            length = writeInt(out, length, (int) crc.getValue());
+            length = writeInt(out, length, data.length);
+            return Arrays.copyOf(out, length);
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * Keep a grown scratch buffer for the next bodies of this thread, unless it is too large to pin.
+     */
+    private static void keep(final byte[] scratch) {
+        if (scratch.length <= MAX_SCRATCH) {
+            SCRATCH.set(scratch);
+        }
+    }
+
+    /**
+     * @return The size of the calling thread's scratch buffer.
+     */
+    static int getScratchSize() {
+        return SCRATCH.get().length;
+    }
+
+    private static int writeInt(final byte[] out, int offset, final int value) {
+        out[offset++] = (byte) value;
+        out[offset++] = (byte) (value >> 8);
+        out[offset++] = (byte) (value >> 16);
+        out[offset++] = (byte) (value >> 24);
+        return offset;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.classic.Level;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the events an appender gave up on, by level.
+ */
+public final class DropCounter {
+    /** TRACE, DEBUG, INFO, WARN and ERROR. */
+    private static final int LEVELS = 5;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LEVELS);
+
+    private static int index(final Level level) {
+        final int index = level.toInt() / Level.DEBUG_INT;
+        return index < 0 ? 0 : Math.min(index, LEVELS - 1);
+    }
+
+    /**
+     * Count a dropped event.
+     * @param event The event.
+     * @return The number of events dropped so far at the level of this event.
+     */
+    public long record(final FlumeEvent event) {
+        return counts.incrementAndGet(index(event.getEvent().getLevel()));
+    }
+
+    /**
+     * @param level The level.
+     * @return The number of events dropped at this level.
+     */
+    public long get(final Level level) {
+        return counts.get(index(level));
+    }
+
+    /**
+     * @return The number of events dropped at any level.
+     */
+    public long get() {
+        long total = 0;
+        for (int i = 0; i < LEVELS; ++i) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A batch of events that keeps its Avro encoding once it has been serialized, so that sending it again after
+ * a failure, to another agent or to the spill log only copies bytes. The batch must not be modified once
+ * {@link #getEncoded()} has been called.
+ */
+public class EncodedBatch extends ArrayList<AvroFlumeEvent> {
+    /**
+     * Generated serial version ID.
+     */
+    private static final long serialVersionUID = 4139216925310387310L;
+
+    /** The schema of an appendBatch argument and of a spill log record. */
+    static final Schema SCHEMA = Schema.createArray(AvroFlumeEvent.SCHEMA$);
+
+    private static final DatumWriter<List<AvroFlumeEvent>> WRITER =
+        new FlumeDatumWriter<List<AvroFlumeEvent>>(SCHEMA);
+
+    /** Per-thread buffer and encoder the batches are serialized with before being copied out. */
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    private transient volatile byte[] encoded;
+
+    public EncodedBatch(final int capacity) {
+        super(capacity);
+    }
+
+    public EncodedBatch(final Collection<AvroFlumeEvent> events) {
+        super(events);
+    }
+
+    /**
+     * Returns the Avro binary encoding of the batch as an array of AvroFlumeEvent, serializing it on the first
+     * call only.
+     * @return The encoded batch, not to be modified.
+     * @throws IOException if an event cannot be serialized.
+     */
+    public byte[] getEncoded() throws IOException {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            final Scratch scratch = SCRATCH.get();
+            scratch.buffer.reset();
+            scratch.encoder = EncoderFactory.get().directBinaryEncoder(scratch.buffer, scratch.encoder);
+            WRITER.write(this, scratch.encoder);
+            bytes = scratch.buffer.toByteArray();
+            encoded = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return true if the batch has been serialized.
+     */
+    public boolean isEncoded() {
+        return encoded != null;
+    }
+
+    private static final class Scratch {
+        private final Utf8Buffer buffer = new Utf8Buffer();
+        private BinaryEncoder encoder;
+    }
+}
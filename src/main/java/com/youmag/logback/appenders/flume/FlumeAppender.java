@@ -16,18 +16,23 @@
  */
 package com.youmag.logback.appenders.flume;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import javax.management.ObjectName;
+
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.PatternLayout;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.LogbackException;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 
 /**
  * An Appender that uses the Avro protocol to route events to Flume.
  */
 
-public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
+public final class FlumeAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
     private ArrayList<FlumeAgent> agents = new ArrayList<FlumeAgent>();
     private AbstractFlumeManager manager = null;
     private String mdcIncludes = null;
@@ -36,12 +41,49 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
     private String eventPrefix = null;
     private String mdcPrefix = null;
     private boolean compressBody = false;
+    private boolean compactId = false;
     private PatternLayout layout = null;
+    private Encoder<ILoggingEvent> encoder = null;
+    private final Utf8Buffer encoderBuffer = new Utf8Buffer();
+    private String bodyFingerprint = null;
 	private int batchSize = 1;
+	private long batchBytes = 0;
+	private int batchStripes = 1;
+	private int coalesceLines = 0;
+	private int coalesceBytes = FlumeAvroConfig.DEFAULT_COALESCE_BYTES;
+	private long lingerMillis = FlumeAvroConfig.DEFAULT_LINGER_MILLIS;
+	private String compressionType = CompressionChannelFactory.NONE;
+	private int compressionLevel = FlumeAvroConfig.DEFAULT_COMPRESSION_LEVEL;
+	private int maxInFlight = 1;
+	private String selector = AgentSelector.FAILOVER;
+	private long healthCheckInterval = FlumeAvroConfig.DEFAULT_HEALTH_CHECK_INTERVAL;
+	private long requestTimeout = FlumeAvroConfig.DEFAULT_REQUEST_TIMEOUT;
+	private long connectTimeout = FlumeAvroConfig.DEFAULT_CONNECT_TIMEOUT;
+	private long startupTimeout = 0;
+	private int connectBufferSize = FlumeAvroConfig.DEFAULT_CONNECT_BUFFER_SIZE;
 	private int reconnectDelay = 0;
 	private int retries = 0;
+	private String spillDir = null;
+	private int spillSegmentSize = FlumeAvroConfig.DEFAULT_SPILL_SEGMENT_SIZE;
+	private long spillMaxBytes = FlumeAvroConfig.DEFAULT_SPILL_MAX_BYTES;
+	private boolean spillCompress = false;
+	private int lanes = 1;
+	private String laneKey = null;
 	private String dataDir = null;
 	private String type = "undef";
+	private boolean async = false;
+	private int queueCapacity = 8192;
+	private String waitStrategy = WaitStrategy.SLEEPING;
+	private long shutdownTimeout = 5000;
+	private String overflowPolicy = OverflowPolicy.BLOCK;
+	private long overflowTimeout = 0;
+	private int formatThreads = 0;
+	private boolean includeCallerData = false;
+	private final DropCounter dropped = new DropCounter();
+	private final AppenderMetrics metrics = new AppenderMetrics(dropped);
+	private ObjectName objectName = null;
+	private volatile AsyncSender sender = null;
+	private MdcProjection projection = null;
 	
     /**
      * Create a Flume Avro Appender.
@@ -56,21 +98,63 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
      */
     public void append(final ILoggingEvent event) {
 
-        final FlumeEvent flumeEvent = 
-        		new FlumeEvent(event, mdcIncludes, mdcExcludes, 
-        				mdcRequired, mdcPrefix,
-        				eventPrefix, compressBody);
-        
-        String str = this.layout.doLayout(flumeEvent.getEvent());
-        byte[] bytes = null;
-        
-        try {
-        	bytes = str.getBytes("UTF-8");
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}        
-		flumeEvent.setBody(bytes);
-        manager.send(flumeEvent, reconnectDelay, retries);
+        // Read once: stop() clears it while events may still be appended.
+        final AsyncSender asyncSender = sender;
+        if (asyncSender != null && asyncSender.isFormatting()) {
+            // Formatted by the FormatStage once drained from the queue.
+            event.prepareForDeferredProcessing();
+            if (includeCallerData) {
+                // Only available from the logging thread's stack.
+                event.getCallerData();
+            }
+            asyncSender.enqueue(new FlumeEvent(event, compressBody, compactId));
+            return;
+        }
+        final FlumeEvent flumeEvent = new FlumeEvent(event, compressBody, compactId);
+        format(flumeEvent);
+		if (asyncSender != null) {
+			asyncSender.enqueue(flumeEvent);
+		} else {
+			try {
+				manager.send(flumeEvent, reconnectDelay, retries);
+			} catch (final RuntimeException ex) {
+				dropped.record(flumeEvent);
+				throw ex;
+			}
+		}
+    }
+
+    /**
+     * Set the headers and the body of an event.
+     * @param flumeEvent The event.
+     */
+    private void format(final FlumeEvent flumeEvent) {
+        flumeEvent.project(projection);
+        flumeEvent.setBody(encode(flumeEvent.getEvent()));
+        if (bodyFingerprint != null) {
+            flumeEvent.getHeaders().put(AvroLoggingEventEncoder.FINGERPRINT_HEADER, bodyFingerprint);
+        }
+        metrics.recordEvent(flumeEvent.getBody().length);
+    }
+
+    /**
+     * Render the event body, through the encoder if one is set and the layout otherwise.
+     * @param event The ILoggingEvent.
+     * @return The body.
+     */
+    private byte[] encode(final ILoggingEvent event) {
+        if (encoder != null) {
+            synchronized (encoderBuffer) {
+                encoderBuffer.reset();
+                try {
+                    encoder.doEncode(event);
+                } catch (final IOException ex) {
+                    throw new LogbackException("Unable to encode event", ex);
+                }
+                return encoderBuffer.toByteArray();
+            }
+        }
+        return Utf8Buffer.get().append(layout.doLayout(event)).toByteArray();
     }
 
     /**
@@ -78,13 +162,25 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
      */
     @Override
     public void start() {
-        if (layout == null) {
-        	throw new RuntimeException("layout is null while creating appender !");
+        if (layout == null && encoder == null) {
+        	throw new RuntimeException("layout and encoder are null while creating appender !");
+        }
+        if (encoder != null) {
+        	try {
+        		encoder.init(encoderBuffer);
+        	} catch (final IOException ex) {
+        		throw new LogbackException("Unable to initialize encoder", ex);
+        	}
+        	if (encoder instanceof AvroLoggingEventEncoder) {
+        		bodyFingerprint = AvroLoggingEventEncoder.FINGERPRINT;
+        	}
         }
         if (name == null) {
         	throw new RuntimeException("No name provided for Appender");
         }
 
+        projection = new MdcProjection(mdcIncludes, mdcExcludes, mdcRequired, mdcPrefix, eventPrefix);
+
         AbstractFlumeManager manager = null;
 
         if (agents == null || agents.size() == 0) {
@@ -94,7 +190,35 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
         }
 
         if("avro".equals(type)) {
-            manager = FlumeAvroManager.getManager(name, agents, batchSize);
+            final FlumeAvroConfig config = new FlumeAvroConfig();
+            config.setBatchSize(batchSize);
+            config.setBatchBytes(batchBytes);
+            config.setBatchStripes(batchStripes);
+            config.setCoalesceLines(coalesceLines);
+            config.setCoalesceBytes(coalesceBytes);
+            config.setLingerMillis(lingerMillis);
+            config.setCompressionType(compressionType);
+            config.setCompressionLevel(compressionLevel);
+            config.setMaxInFlight(maxInFlight);
+            config.setSelector(selector);
+            config.setReconnectDelay(reconnectDelay);
+            config.setRetries(retries);
+            config.setHealthCheckInterval(healthCheckInterval);
+            config.setRequestTimeout(requestTimeout);
+            config.setConnectTimeout(connectTimeout);
+            config.setStartupTimeout(startupTimeout);
+            config.setConnectBufferSize(connectBufferSize);
+            config.setSpillDir(spillDir);
+            config.setSpillSegmentSize(spillSegmentSize);
+            config.setSpillMaxBytes(spillMaxBytes);
+            config.setSpillCompress(spillCompress);
+            config.setLanes(lanes);
+            config.setLaneKey(laneKey);
+            if (config.getLanes() > 1) {
+                manager = FlumeLaneManager.getManager(name, agents, config);
+            } else {
+                manager = FlumeAvroManager.getManager(name, agents, config);
+            }
         }
 
         if("agent".equals(type)) {
@@ -107,6 +231,28 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
     	addWarn("Using manager " + type);
 
         this.manager = manager;
+
+        if (formatThreads > 0 && !async) {
+        	addWarn("formatThreads requires async, formatting on the logging threads");
+        }
+        if (async) {
+        	FormatStage formatter = null;
+        	if (formatThreads > 0) {
+        		formatter = new FormatStage(name, formatThreads, new FormatStage.Formatter() {
+        			public void format(final FlumeEvent flumeEvent) {
+        				FlumeAppender.this.format(flumeEvent);
+        			}
+        		}, dropped, this);
+        		addInfo("Formatting events on " + formatter.getThreads() + " threads");
+        	}
+        	sender = new AsyncSender(name, manager, queueCapacity, waitStrategy,
+        			reconnectDelay, retries, OverflowPolicy.forName(overflowPolicy, overflowTimeout), dropped, this,
+        			formatter);
+        	sender.start();
+        	metrics.setSender(sender);
+        	addInfo("Sending asynchronously through a ring buffer of " + sender.getQueueCapacity() + " events");
+        }
+        objectName = Jmx.register("Appender", name, metrics);
         super.start();
     }
 
@@ -116,6 +262,13 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
     @Override
     public void stop() {
         super.stop();
+        if (sender != null) {
+        	sender.stop(shutdownTimeout);
+        	metrics.setSender(null);
+        	sender = null;
+        }
+        Jmx.unregister(objectName);
+        objectName = null;
         manager.release();
     }
 
@@ -151,14 +304,78 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
 		this.compressBody = compressBody;
 	}
 
+	public void setCompactId(boolean compactId) {
+		this.compactId = compactId;
+	}
+
 	public void setLayout(PatternLayout layout) {
 		this.layout = layout;
 	}
 
+	public void setEncoder(Encoder<ILoggingEvent> encoder) {
+		this.encoder = encoder;
+	}
+
 	public void setBatchSize(int batchSize) {
 		this.batchSize = batchSize;
 	}
 
+	public void setBatchBytes(long batchBytes) {
+		this.batchBytes = batchBytes;
+	}
+
+	public void setBatchStripes(int batchStripes) {
+		this.batchStripes = batchStripes;
+	}
+
+	public void setCoalesceLines(int coalesceLines) {
+		this.coalesceLines = coalesceLines;
+	}
+
+	public void setCoalesceBytes(int coalesceBytes) {
+		this.coalesceBytes = coalesceBytes;
+	}
+
+	public void setLingerMillis(long lingerMillis) {
+		this.lingerMillis = lingerMillis;
+	}
+
+	public void setCompressionType(String compressionType) {
+		this.compressionType = compressionType;
+	}
+
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public void setSelector(String selector) {
+		this.selector = selector;
+	}
+
+	public void setHealthCheckInterval(long healthCheckInterval) {
+		this.healthCheckInterval = healthCheckInterval;
+	}
+
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	public void setConnectTimeout(long connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void setStartupTimeout(long startupTimeout) {
+		this.startupTimeout = startupTimeout;
+	}
+
+	public void setConnectBufferSize(int connectBufferSize) {
+		this.connectBufferSize = connectBufferSize;
+	}
+
 	public void setReconnectDelay(int reconnectDelay) {
 		this.reconnectDelay = reconnectDelay;
 	}
@@ -167,6 +384,30 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
 		this.retries = retries;
 	}
 
+	public void setSpillDir(String spillDir) {
+		this.spillDir = spillDir;
+	}
+
+	public void setSpillSegmentSize(int spillSegmentSize) {
+		this.spillSegmentSize = spillSegmentSize;
+	}
+
+	public void setSpillMaxBytes(long spillMaxBytes) {
+		this.spillMaxBytes = spillMaxBytes;
+	}
+
+	public void setSpillCompress(boolean spillCompress) {
+		this.spillCompress = spillCompress;
+	}
+
+	public void setLanes(int lanes) {
+		this.lanes = lanes;
+	}
+
+	public void setLaneKey(String laneKey) {
+		this.laneKey = laneKey;
+	}
+
 	public void setDataDir(String dataDir) {
 		this.dataDir = dataDir;
 	}
@@ -175,4 +416,58 @@ public final class FlumeAppender extends AppenderBase<ILoggingEvent> {
 		this.type = type;
 	}
 
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void setWaitStrategy(String waitStrategy) {
+		this.waitStrategy = waitStrategy;
+	}
+
+	public void setShutdownTimeout(long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	public void setOverflowPolicy(String overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public void setOverflowTimeout(long overflowTimeout) {
+		this.overflowTimeout = overflowTimeout;
+	}
+
+	public void setFormatThreads(int formatThreads) {
+		this.formatThreads = formatThreads;
+	}
+
+	public void setIncludeCallerData(boolean includeCallerData) {
+		this.includeCallerData = includeCallerData;
+	}
+
+	/**
+	 * @return The counters of this appender, also published over JMX while it is started.
+	 */
+	public AppenderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return The number of events that were dropped or could not be sent.
+	 */
+	public long getDroppedEvents() {
+		return dropped.get();
+	}
+
+	/**
+	 * @param level A level.
+	 * @return The number of events of this level that were dropped or could not be sent.
+	 */
+	public long getDroppedEvents(Level level) {
+		return dropped.get(level);
+	}
+
 }
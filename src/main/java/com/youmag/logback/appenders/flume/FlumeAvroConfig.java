@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.io.File;
+
+/**
+ * Tuning settings for the FlumeAvroManager.
+ */
+public final class FlumeAvroConfig implements Cloneable {
+    /**
+     * The default maximum time a partial batch is held before it is sent (1 second).
+     */
+    public static final long DEFAULT_LINGER_MILLIS = 1000;
+
+    /**
+     * The default reconnection delay (500 milliseconds or .5 seconds).
+     */
+    public static final int DEFAULT_RECONNECTION_DELAY = 500;
+
+    /**
+     * The default number of consecutive failures after which an agent is considered down.
+     */
+    public static final int DEFAULT_RECONNECTS = 3;
+
+    /**
+     * The default interval between health checks of unavailable agents (1 second).
+     */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 1000;
+
+    /**
+     * The default time to wait for an agent to acknowledge a request (20 seconds).
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 20000;
+
+    /**
+     * The default time to wait for a connection to an agent to be established (5 seconds).
+     */
+    public static final long DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The default number of events held while the first connection is being established.
+     */
+    public static final int DEFAULT_CONNECT_BUFFER_SIZE = 10000;
+
+    /**
+     * The default size of the bodies that completes a coalesced event (64 kilobytes).
+     */
+    public static final int DEFAULT_COALESCE_BYTES = 64 * 1024;
+
+    /**
+     * The default zlib compression level.
+     */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /**
+     * The default size of a spill segment (8 megabytes).
+     */
+    public static final int DEFAULT_SPILL_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default maximum size of the spill log (1 gigabyte).
+     */
+    public static final long DEFAULT_SPILL_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private int batchSize = 1;
+    private int maxInFlight = 1;
+    private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private long startupTimeout = 0;
+    private int connectBufferSize = DEFAULT_CONNECT_BUFFER_SIZE;
+    private long batchBytes = 0;
+    private int batchStripes = 1;
+    private int coalesceLines = 0;
+    private int coalesceBytes = DEFAULT_COALESCE_BYTES;
+    private long lingerMillis = DEFAULT_LINGER_MILLIS;
+    private String selector = AgentSelector.FAILOVER;
+    private int reconnectDelay = DEFAULT_RECONNECTION_DELAY;
+    private int retries = DEFAULT_RECONNECTS;
+    private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    private String compressionType = CompressionChannelFactory.NONE;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private String spillDir = null;
+    private int spillSegmentSize = DEFAULT_SPILL_SEGMENT_SIZE;
+    private long spillMaxBytes = DEFAULT_SPILL_MAX_BYTES;
+    private boolean spillCompress = false;
+    private int lanes = 1;
+    private String laneKey = null;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize The number of events that triggers sending a batch.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize <= 0 ? 1 : batchSize;
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * @param batchBytes The accumulated body size that triggers sending a batch, 0 for no limit.
+     */
+    public void setBatchBytes(final long batchBytes) {
+        this.batchBytes = batchBytes < 0 ? 0 : batchBytes;
+    }
+
+    public int getBatchStripes() {
+        return batchStripes;
+    }
+
+    /**
+     * @param batchStripes The number of batches accumulated in parallel by the logging threads.
+     */
+    public void setBatchStripes(final int batchStripes) {
+        this.batchStripes = batchStripes <= 0 ? 1 : batchStripes;
+    }
+
+    public int getCoalesceLines() {
+        return coalesceLines;
+    }
+
+    /**
+     * @param coalesceLines The number of log lines packed into one event, 0 or 1 to send every line as an event.
+     */
+    public void setCoalesceLines(final int coalesceLines) {
+        this.coalesceLines = coalesceLines < 0 ? 0 : coalesceLines;
+    }
+
+    public boolean isCoalescing() {
+        return coalesceLines > 1;
+    }
+
+    public int getCoalesceBytes() {
+        return coalesceBytes;
+    }
+
+    /**
+     * @param coalesceBytes The size of the bodies that completes a coalesced event.
+     */
+    public void setCoalesceBytes(final int coalesceBytes) {
+        this.coalesceBytes = coalesceBytes <= 0 ? DEFAULT_COALESCE_BYTES : coalesceBytes;
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * @param lingerMillis The maximum time the first event of a batch waits before the batch is sent.
+     */
+    public void setLingerMillis(final long lingerMillis) {
+        this.lingerMillis = lingerMillis <= 0 ? DEFAULT_LINGER_MILLIS : lingerMillis;
+    }
+
+    public String getCompressionType() {
+        return compressionType;
+    }
+
+    /**
+     * @param compressionType none or deflate, must match the compression-type of the avro sources.
+     */
+    public void setCompressionType(final String compressionType) {
+        this.compressionType = compressionType == null ? CompressionChannelFactory.NONE : compressionType;
+    }
+
+    public boolean isDeflate() {
+        return CompressionChannelFactory.DEFLATE.equalsIgnoreCase(compressionType);
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel The zlib level from 1 (fastest) to 9 (smallest).
+     */
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel < 1 || compressionLevel > 9 ? DEFAULT_COMPRESSION_LEVEL
+            : compressionLevel;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight The number of requests that may await acknowledgement per agent. Above 1, requests
+     * are pipelined and acknowledged asynchronously.
+     */
+    public void setMaxInFlight(final int maxInFlight) {
+        this.maxInFlight = maxInFlight <= 0 ? 1 : maxInFlight;
+    }
+
+    public boolean isPipelined() {
+        return maxInFlight > 1;
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @param requestTimeout The time after which an unacknowledged request is considered failed.
+     */
+    public void setRequestTimeout(final long requestTimeout) {
+        this.requestTimeout = requestTimeout <= 0 ? DEFAULT_REQUEST_TIMEOUT : requestTimeout;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout The time after which an attempt to connect to an agent is abandoned.
+     */
+    public void setConnectTimeout(final long connectTimeout) {
+        this.connectTimeout = connectTimeout <= 0 ? DEFAULT_CONNECT_TIMEOUT : connectTimeout;
+    }
+
+    public long getStartupTimeout() {
+        return startupTimeout;
+    }
+
+    /**
+     * @param startupTimeout How long starting the manager waits for a first agent to be connected, 0 to
+     * connect in the background.
+     */
+    public void setStartupTimeout(final long startupTimeout) {
+        this.startupTimeout = startupTimeout < 0 ? 0 : startupTimeout;
+    }
+
+    public int getConnectBufferSize() {
+        return connectBufferSize;
+    }
+
+    /**
+     * @param connectBufferSize The number of events held until the first connection is established.
+     */
+    public void setConnectBufferSize(final int connectBufferSize) {
+        this.connectBufferSize = connectBufferSize < 0 ? 0 : connectBufferSize;
+    }
+
+    public String getSelector() {
+        return selector;
+    }
+
+    /**
+     * @param selector How agents are chosen: failover, roundRobin, random or leastLatency.
+     */
+    public void setSelector(final String selector) {
+        this.selector = selector == null ? AgentSelector.FAILOVER : selector;
+    }
+
+    public int getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    /**
+     * @param reconnectDelay How long a failed agent is left alone before it is probed again.
+     */
+    public void setReconnectDelay(final int reconnectDelay) {
+        this.reconnectDelay = reconnectDelay <= 0 ? DEFAULT_RECONNECTION_DELAY : reconnectDelay;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @param retries The number of consecutive failures after which an agent stops receiving traffic.
+     */
+    public void setRetries(final int retries) {
+        this.retries = retries <= 0 ? DEFAULT_RECONNECTS : retries;
+    }
+
+    public long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @param healthCheckInterval The interval between two reconnection and probe rounds.
+     */
+    public void setHealthCheckInterval(final long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval <= 0 ? DEFAULT_HEALTH_CHECK_INTERVAL : healthCheckInterval;
+    }
+
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    /**
+     * @param spillDir The directory where undeliverable events are kept until an agent accepts them, null to
+     * drop them instead.
+     */
+    public void setSpillDir(final String spillDir) {
+        this.spillDir = spillDir == null || spillDir.length() == 0 ? null : spillDir;
+    }
+
+    public boolean isSpilling() {
+        return spillDir != null;
+    }
+
+    public int getSpillSegmentSize() {
+        return spillSegmentSize;
+    }
+
+    /**
+     * @param spillSegmentSize The size of each file of the spill log.
+     */
+    public void setSpillSegmentSize(final int spillSegmentSize) {
+        this.spillSegmentSize = spillSegmentSize <= 0 ? DEFAULT_SPILL_SEGMENT_SIZE : spillSegmentSize;
+    }
+
+    public long getSpillMaxBytes() {
+        return spillMaxBytes;
+    }
+
+    /**
+     * @param spillMaxBytes The size beyond which the oldest spilled events are dropped.
+     */
+    public void setSpillMaxBytes(final long spillMaxBytes) {
+        this.spillMaxBytes = spillMaxBytes <= 0 ? DEFAULT_SPILL_MAX_BYTES : spillMaxBytes;
+    }
+
+    public boolean isSpillCompress() {
+        return spillCompress;
+    }
+
+    /**
+     * @param spillCompress If true spilled batches are deflated.
+     */
+    public void setSpillCompress(final boolean spillCompress) {
+        this.spillCompress = spillCompress;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * @param lanes The number of independent senders, each with its own connections and batch.
+     */
+    public void setLanes(final int lanes) {
+        this.lanes = lanes <= 0 ? 1 : lanes;
+    }
+
+    public String getLaneKey() {
+        return laneKey;
+    }
+
+    /**
+     * @param laneKey The MDC key whose value chooses the lane of an event, null to use the thread name.
+     */
+    public void setLaneKey(final String laneKey) {
+        this.laneKey = laneKey == null || laneKey.length() == 0 ? null : laneKey;
+    }
+
+    /**
+     * Returns the settings of one lane: a copy of these settings that spills to a directory of its own and
+     * gets an equal share of the spill size.
+     * @param lane The index of the lane.
+     * @return The settings of the lane.
+     */
+    FlumeAvroConfig forLane(final int lane) {
+        final FlumeAvroConfig config;
+        try {
+            config = (FlumeAvroConfig) clone();
+        } catch (final CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        config.lanes = 1;
+        if (spillDir != null) {
+            config.spillDir = new File(spillDir, "lane-" + lane).getPath();
+            config.spillMaxBytes = Math.max(spillSegmentSize, spillMaxBytes / lanes);
+        }
+        return config;
+    }
+}
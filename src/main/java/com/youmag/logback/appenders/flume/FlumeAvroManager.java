@@ -17,22 +17,29 @@
 package com.youmag.logback.appenders.flume;
 
 import org.apache.avro.AvroRemoteException;
-import org.apache.avro.ipc.NettyTransceiver;
-import org.apache.avro.ipc.Transceiver;
-import org.apache.avro.ipc.specific.SpecificRequestor;
+import org.apache.avro.ipc.Callback;
 import org.apache.flume.source.avro.AvroFlumeEvent;
-import org.apache.flume.source.avro.AvroSourceProtocol;
 import org.apache.flume.source.avro.Status;
+import org.jboss.netty.channel.ChannelFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Manager for FlumeAvroAppenders.
@@ -40,38 +47,133 @@ import java.util.Map;
 public class FlumeAvroManager extends AbstractFlumeManager {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FlumeAvroManager.class);
 
-    /**
-      The default reconnection delay (500 milliseconds or .5 seconds).
-     */
-    public static final int DEFAULT_RECONNECTION_DELAY   = 500;
-
-    private static final int DEFAULT_RECONNECTS = 3;
-
     private static AvroManagerFactory factory = new AvroManagerFactory();
 
-    private AvroSourceProtocol client;
+    /** How often the replay thread looks for spilled events. */
+    private static final long REPLAY_POLL_MILLIS = 100;
 
-    private final List<FlumeAgent> agents;
+    private final List<AvroAgentConnection> connections;
 
     private final int batchSize;
 
-    private final EventList events = new EventList();
+    private final long lingerMillis;
+
+    private final FlumeAvroConfig config;
+
+    private final BatchStripes batches;
+
+    private final Coalescer coalescer;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService retrier;
+
+    private final ScheduledExecutorService healthChecker;
+
+    private final AgentSelector selector;
+
+    private final SpillLog spill;
+
+    private final Thread replayer;
+
+    private final List<Thread> connectors;
 
-    private int current = 0;
+    /** The events logged until the first connection is established, null once it has been. */
+    private volatile List<AvroFlumeEvent> backlog;
 
-    private Transceiver transceiver;
+    private volatile boolean running = true;
+
+    private volatile int current = 0;
 
     /**
      * Constructor
      * @param name The unique name of this manager.
      * @param agents An array of Agents.
-     * @param batchSize The number of events to include in a batch.
+     * @param config The batching and connection settings.
      */
-    protected FlumeAvroManager(final String name, final String shortName, final List<FlumeAgent> agents, final int batchSize) {
+    protected FlumeAvroManager(final String name, final String shortName, final List<FlumeAgent> agents,
+                               final FlumeAvroConfig config) {
     	super(name);
-    	this.agents = agents;
-        this.batchSize = batchSize;
-        this.client = connect(agents);
+        this.config = config;
+        this.batchSize = config.getBatchSize();
+        this.lingerMillis = config.getLingerMillis();
+        this.batches = new BatchStripes(config.getBatchStripes(), batchSize, config.getBatchBytes());
+        this.coalescer = config.isCoalescing() ?
+            new Coalescer(config.getCoalesceLines(), config.getCoalesceBytes()) : null;
+        this.selector = AgentSelector.forName(config.getSelector());
+        this.connections = new ArrayList<AvroAgentConnection>(agents.size());
+        final ChannelFactory transport = SharedTransport.acquire();
+        for (final FlumeAgent agent : agents) {
+            connections.add(new AvroAgentConnection(agent, config, getMetrics(), transport));
+        }
+        getMetrics().setCurrentAgent(connections.get(current).toString());
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("FlumeAvroScheduler-" +
+            shortName));
+        if (batchSize > 1 || coalescer != null) {
+            final long period = Math.max(1, lingerMillis / 2);
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        flushExpired();
+                    } catch (final RuntimeException ex) {
+                        LOGGER.warn("Unable to flush lingering batch for " + getName(), ex);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("FlumeAvroHealth-" +
+            shortName));
+        healthChecker.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    checkHealth();
+                } catch (final RuntimeException ex) {
+                    LOGGER.warn("Health check failed for " + getName(), ex);
+                }
+            }
+        }, config.getHealthCheckInterval(), config.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
+        if (config.isPipelined()) {
+            retrier = Executors.newSingleThreadExecutor(new DaemonThreadFactory("FlumeAvroRetry-" + shortName));
+            final long period = Math.max(1, Math.min(1000, config.getRequestTimeout() / 4));
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    final long now = System.currentTimeMillis();
+                    for (final AvroAgentConnection connection : connections) {
+                        connection.expire(now);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            retrier = null;
+        }
+        spill = openSpill(config);
+        if (spill != null) {
+            replayer = new DaemonThreadFactory("FlumeAvroReplay-" + shortName).newThread(new Runnable() {
+                public void run() {
+                    replay();
+                }
+            });
+            replayer.start();
+        } else {
+            replayer = null;
+        }
+        backlog = new ArrayList<AvroFlumeEvent>();
+        connectors = new ArrayList<Thread>(connections.size());
+        connect(shortName);
+    }
+
+    private SpillLog openSpill(final FlumeAvroConfig config) {
+        if (!config.isSpilling()) {
+            return null;
+        }
+        try {
+            return new SpillLog(new File(config.getSpillDir()), config.getSpillSegmentSize(),
+                config.getSpillMaxBytes(), config.isSpillCompress());
+        } catch (final IOException ex) {
+            LOGGER.error("Unable to open spill log in " + config.getSpillDir() + ", events will be dropped " +
+                "when no agent is available", ex);
+            return null;
+        }
     }
 
     /**
@@ -81,15 +183,38 @@ public class FlumeAvroManager extends AbstractFlumeManager {
      * @param batchSize The number of events to include in a batch.
      * @return A FlumeAvroManager.
      */
-    public static FlumeAvroManager getManager(final String name, final List<FlumeAgent> agents, int batchSize) {
+    public static FlumeAvroManager getManager(final String name, final List<FlumeAgent> agents, final int batchSize) {
+        final FlumeAvroConfig config = new FlumeAvroConfig();
+        config.setBatchSize(batchSize);
+        return getManager(name, agents, config);
+    }
+
+    /**
+     * Returns a FlumeAvroManager.
+     * @param name The name of the manager.
+     * @param agents The agents to use.
+     * @param config The batching and connection settings.
+     * @return A FlumeAvroManager.
+     */
+    public static FlumeAvroManager getManager(final String name, final List<FlumeAgent> agents,
+                                              final FlumeAvroConfig config) {
+        return getManager(name, agents, config, -1);
+    }
+
+    /**
+     * Returns the FlumeAvroManager of one lane of a FlumeLaneManager.
+     * @param name The name of the manager.
+     * @param agents The agents to use.
+     * @param config The batching and connection settings.
+     * @param lane The index of the lane, -1 if the manager is not part of a FlumeLaneManager.
+     * @return A FlumeAvroManager.
+     */
+    static FlumeAvroManager getManager(final String name, final List<FlumeAgent> agents,
+                                       final FlumeAvroConfig config, final int lane) {
         if (agents == null || agents.size() == 0) {
             throw new IllegalArgumentException("At least one agent is required");
         }
 
-        if (batchSize <= 0) {
-            batchSize = 1;
-        }
-
         final StringBuilder sb = new StringBuilder("FlumeAvro[");
         boolean first = true;
         for (final FlumeAgent agent : agents) {
@@ -100,7 +225,11 @@ public class FlumeAvroManager extends AbstractFlumeManager {
             first = false;
         }
         sb.append("]");
-        return (FlumeAvroManager) getManager(sb.toString(), factory, new FactoryData(name, agents, batchSize));
+        if (lane >= 0) {
+            sb.append("#").append(lane);
+        }
+        return (FlumeAvroManager) getManager(sb.toString(), factory,
+            new FactoryData(lane >= 0 ? name + "-" + lane : name, agents, config));
     }
 
     /**
@@ -111,171 +240,475 @@ public class FlumeAvroManager extends AbstractFlumeManager {
         return current;
     }
 
+    /**
+     * Send an event. The delay and retries of the appender are not used, the agents' circuit breakers are
+     * configured with the reconnectDelay and retries of the FlumeAvroConfig instead. Adding the event to a
+     * batch takes no lock shared with the other logging threads, the manager's lock is only taken to send.
+     */
     @Override
-    public synchronized void send(final FlumeEvent event, int delay, int retries)  {
-        if (delay == 0) {
-            delay = DEFAULT_RECONNECTION_DELAY;
+    public void send(final FlumeEvent event, final int delay, final int retries)  {
+        if (coalescer != null) {
+            for (final AvroFlumeEvent envelope : coalescer.add(event.getHeaders(), event.getBody())) {
+                hold(envelope);
+            }
+            return;
         }
-        if (retries == 0) {
-            retries = DEFAULT_RECONNECTS;
+        final AvroFlumeEvent avroEvent = new AvroFlumeEvent();
+        avroEvent.setBody(ByteBuffer.wrap(event.getBody()));
+        // The event's own headers are written as they are, their names encoded once by FlumeDatumWriter.
+        avroEvent.setHeaders(asCharSequences(event.getHeaders()));
+        hold(avroEvent);
+    }
+
+    /**
+     * Holds an event in the backlog while connecting, sends it or adds it to a batch otherwise.
+     */
+    private void hold(final AvroFlumeEvent avroEvent) {
+        if (backlog != null) {
+            synchronized (this) {
+                final List<AvroFlumeEvent> held = backlog;
+                if (held != null && held.size() < config.getConnectBufferSize()) {
+                    held.add(avroEvent);
+                    return;
+                }
+            }
         }
-        if (client == null) {
-            client = connect(agents);
+        add(avroEvent);
+    }
+
+    /**
+     * The headers with the type AvroFlumeEvent expects, they are only read from then on.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<CharSequence, CharSequence> asCharSequences(final Map<String, String> headers) {
+        return (Map<CharSequence, CharSequence>) (Map<?, ?>) headers;
+    }
+
+    /**
+     * Sends an event, or adds it to the pending batch of the calling thread.
+     */
+    private void add(final AvroFlumeEvent avroEvent) {
+        if (batchSize <= 1) {
+            synchronized (this) {
+                send(avroEvent, null);
+            }
+            return;
         }
-        String msg = "No Flume agents are available";
-        if (client != null) {
-            final AvroFlumeEvent avroEvent = new AvroFlumeEvent();
-            avroEvent.setBody(ByteBuffer.wrap(event.getBody()));
-            avroEvent.setHeaders(new HashMap<CharSequence, CharSequence>());
+        if (batches.add(avroEvent, avroEvent.getBody().remaining())) {
+            sendCompleted();
+        }
+    }
+
+    /**
+     * Sends the completed batches, oldest first, including those completed by other threads meanwhile.
+     */
+    private synchronized void sendCompleted() {
+        List<AvroFlumeEvent> batch;
+        while ((batch = batches.poll()) != null) {
+            send(null, batch);
+        }
+    }
 
-            for (final Map.Entry<String, String> entry : event.getHeaders().entrySet()) {
-                avroEvent.getHeaders().put(entry.getKey(), entry.getValue());
+    /**
+     * Sends the events held while connecting. Called once an agent is connected, or once all agents have
+     * failed to connect, in which case the events are spilled or dropped as when no agent is available.
+     */
+    private synchronized void drainBacklog() {
+        final List<AvroFlumeEvent> held = backlog;
+        if (held == null) {
+            return;
+        }
+        int dropped = 0;
+        RuntimeException error = null;
+        try {
+            for (final AvroFlumeEvent avroEvent : held) {
+                try {
+                    add(avroEvent);
+                } catch (final RuntimeException ex) {
+                    ++dropped;
+                    error = ex;
+                }
             }
+        } finally {
+            // Only now, logging threads wait on this lock so that their events follow the held ones.
+            backlog = null;
+        }
+        if (error != null) {
+            LOGGER.error("Dropping " + dropped + " events logged while " + getName() + " was connecting", error);
+        }
+    }
 
-            final List<AvroFlumeEvent> batch = batchSize > 1 ? events.addAndGet(avroEvent, batchSize) : null;
-            if (batch == null && batchSize > 1) {
-                return;
+    /**
+     * Makes the first agent that connects the current one and sends the events held until then.
+     * @return true if this was the first agent to connect.
+     */
+    private synchronized boolean markConnected(final int index) {
+        if (backlog == null) {
+            return false;
+        }
+        setCurrent(index);
+        drainBacklog();
+        return true;
+    }
+
+    /**
+     * Sends the pending batches whose first event has waited longer than the linger time.
+     */
+    void flushExpired() {
+        if (coalescer != null) {
+            for (final AvroFlumeEvent envelope : coalescer.completeOlderThan(lingerMillis)) {
+                hold(envelope);
             }
+        }
+        if (batches.completeOlderThan(lingerMillis)) {
+            sendCompleted();
+        }
+    }
 
-            int i = 0;
+    /**
+     * Sends whatever is pending regardless of its age.
+     */
+    void flush() {
+        if (coalescer != null) {
+            for (final AvroFlumeEvent envelope : coalescer.completeOlderThan(0)) {
+                hold(envelope);
+            }
+        }
+        batches.completeOlderThan(0);
+        sendCompleted();
+    }
 
-            msg = "Error writing to " + getName();
+    private void send(final AvroFlumeEvent avroEvent, final List<AvroFlumeEvent> batch) {
+        if (spill != null && !spill.isEmpty()) {
+            // Keep the events in order until the replay thread has caught up.
+            spill(avroEvent, batch);
+            return;
+        }
+        final int index = selector.select(connections, current);
+        if (retrier != null) {
+            final AvroAgentConnection connection = connections.get(index);
+            if (connection.isAvailable()) {
+                sendAsync(connection, avroEvent, batch);
+                return;
+            }
+        }
+        sendOrSpill(index, avroEvent, batch);
+    }
 
-            do {
-                try {
-                    final Status status = (batch == null) ? client.append(avroEvent) : client.appendBatch(batch);
-                    if (!status.equals(Status.OK)) {
-                        throw new AvroRemoteException("RPC communication failed to " + agents.get(current).getHost() +
-                            ":" + agents.get(current).getPort());
-                    }
-                    return;
-                } catch (final Exception ex) {
-                    if (i == retries - 1) {
-                        msg = "Error writing to " + getName() + " at " + agents.get(current).getHost() + ":" +
-                            agents.get(current).getPort();
-                        LOGGER.warn(msg, ex);
-                        break;
-                    }
-                    sleep(delay);
+    /**
+     * Pipelined send: returns as soon as the request is written. A failed or timed out request is sent again
+     * synchronously, failing over to the other available agents, from the retry thread.
+     */
+    private void sendAsync(final AvroAgentConnection connection, final AvroFlumeEvent avroEvent,
+                           final List<AvroFlumeEvent> batch) {
+        connection.sendAsync(avroEvent, batch, new Callback<Status>() {
+            public void handleResult(final Status status) {
+                if (!status.equals(Status.OK)) {
+                    handleError(new AvroRemoteException("RPC communication failed to " + connection));
+                } else {
+                    connection.recordSuccess();
+                    recordSent(avroEvent, batch);
                 }
-            } while (++i < retries);
+            }
 
-            for (int index = 0; index < agents.size(); ++index) {
-                if (index == current) {
-                    continue;
-                }
-                final FlumeAgent agent = agents.get(index);
-                i = 0;
-                do {
-                    try {
-                        transceiver = null;
-                        final AvroSourceProtocol c = connect(agent.getHost(), agent.getPort());
-                        final Status status = (batch == null) ? c.append(avroEvent) : c.appendBatch(batch);
-                        if (!status.equals(Status.OK)) {
-                            if (i == retries - 1) {
-                                final String warnMsg = "RPC communication failed to " + getName() + " at " +
-                                    agent.getHost() + ":" + agent.getPort();
-                                LOGGER.warn(warnMsg);
+            public void handleError(final Throwable error) {
+                LOGGER.warn("Error writing to " + getName() + " at " + connection + ", retrying", error);
+                connection.recordFailure(error);
+                getMetrics().recordFailure();
+                getMetrics().recordRetry();
+                try {
+                    retrier.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                sendOrSpill(current, avroEvent, batch);
+                            } catch (final RuntimeException ex) {
+                                LOGGER.error("Dropping " + (batch == null ? 1 : batch.size()) + " events", ex);
                             }
-                            continue;
                         }
-                        client = c;
-                        current = i;
-                        return;
-                    } catch (final Exception ex) {
-                        if (i == retries - 1) {
-                            final String warnMsg = "Error writing to " + getName() + " at " + agent.getHost() + ":" +
-                                agent.getPort();
-                            LOGGER.warn(warnMsg, ex);
-                            break;
+                    });
+                } catch (final RejectedExecutionException ex) {
+                    if (spill != null) {
+                        try {
+                            spill(avroEvent, batch);
+                            return;
+                        } catch (final RuntimeException spillError) {
+                            LOGGER.error("Unable to spill events for " + getName(), spillError);
                         }
-                        sleep(delay);
                     }
-                } while (++i < retries);
+                    LOGGER.error("Dropping " + (batch == null ? 1 : batch.size()) + " events, " + getName() +
+                        " is stopped", error);
+                }
             }
+        });
+    }
+
+    /**
+     * Synchronous send that writes the events to the spill log, if there is one, when no agent accepts them.
+     */
+    private void sendOrSpill(final int start, final AvroFlumeEvent avroEvent, final List<AvroFlumeEvent> batch) {
+        try {
+            sendWithFailover(start, avroEvent, batch);
+        } catch (final RuntimeException ex) {
+            if (spill == null) {
+                throw ex;
+            }
+            spill(avroEvent, batch);
         }
+    }
 
-        throw new RuntimeException(msg);
+    private void spill(final AvroFlumeEvent avroEvent, final List<AvroFlumeEvent> batch) {
+        try {
+            spill.append(batch == null ? Collections.singletonList(avroEvent) : batch);
+            getMetrics().recordSpilled(batch == null ? 1 : batch.size());
+        } catch (final IOException ex) {
+            throw new RuntimeException("Unable to spill events for " + getName(), ex);
+        }
+    }
 
+    /**
+     * Body of the replay thread: sends the spilled batches back to back while an agent accepts them, and
+     * backs off for the reconnect delay otherwise.
+     */
+    private void replay() {
+        while (running) {
+            long pause = REPLAY_POLL_MILLIS;
+            try {
+                final List<AvroFlumeEvent> batch = spill.peek();
+                if (batch != null) {
+                    if (isAnyAvailable()) {
+                        sendWithFailover(current, null, batch);
+                        spill.commit();
+                        continue;
+                    }
+                    pause = config.getReconnectDelay();
+                }
+            } catch (final Exception ex) {
+                LOGGER.warn("Unable to replay spilled events for " + getName(), ex);
+                pause = config.getReconnectDelay();
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (final InterruptedException ex) {
+                return;
+            }
+        }
     }
 
-    private void sleep(final int delay) {
-        try {
-            Thread.sleep(delay);
-        } catch (final InterruptedException ex) {
-            Thread.currentThread().interrupt();
+    private boolean isAnyAvailable() {
+        for (final AvroAgentConnection connection : connections) {
+            if (connection.isAvailable()) {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
-     * There is a very good chance that this will always return the first agent even if it isn't available.
-     * @param agents The list of agents to choose from
-     * @return The FlumeEventAvroServer.
+     * Synchronous send: tries the given agent, then each of the other available ones. Agents whose breaker is
+     * open or that are disconnected are skipped, the health checker brings them back.
      */
-    private AvroSourceProtocol connect(final List<FlumeAgent> agents) {
-        int i = 0;
-        for (final FlumeAgent agent : agents) {
-            final AvroSourceProtocol server = connect(agent.getHost(), agent.getPort());
-            if (server != null) {
-                current = i;
-                return server;
+    private synchronized void sendWithFailover(final int start, final AvroFlumeEvent avroEvent,
+                                               final List<AvroFlumeEvent> batch) {
+        String msg = "No Flume agents are available";
+        for (int n = 0; n < connections.size(); ++n) {
+            final int index = (start + n) % connections.size();
+            final AvroAgentConnection connection = connections.get(index);
+            if (!connection.isAvailable()) {
+                continue;
+            }
+            try {
+                connection.send(avroEvent, batch);
+                connection.recordSuccess();
+                recordSent(avroEvent, batch);
+                if (n > 0) {
+                    getMetrics().recordFailover();
+                }
+                setCurrent(index);
+                return;
+            } catch (final Exception ex) {
+                msg = "Error writing to " + getName() + " at " + connection;
+                LOGGER.warn(msg, ex);
+                connection.recordFailure(ex);
+                getMetrics().recordFailure();
             }
-            ++i;
         }
-        LOGGER.error("Flume manager " + getName() + " was unable to connect to any agents");
-        return null;
+
+        throw new RuntimeException(msg);
     }
 
-    private AvroSourceProtocol connect(final String hostname, final int port) {
-        try {
-            if (transceiver == null) {
-                transceiver = new NettyTransceiver(new InetSocketAddress(hostname, port));
+    private void recordSent(final AvroFlumeEvent avroEvent, final List<AvroFlumeEvent> batch) {
+        if (batch == null) {
+            getMetrics().recordSent(1, avroEvent.getBody().remaining());
+            return;
+        }
+        long bytes = 0;
+        for (final AvroFlumeEvent event : batch) {
+            bytes += event.getBody().remaining();
+        }
+        getMetrics().recordSent(batch.size(), bytes);
+    }
+
+    private void setCurrent(final int index) {
+        if (current != index) {
+            current = index;
+            getMetrics().setCurrentAgent(connections.get(index).toString());
+        }
+    }
+
+    /**
+     * Reconnects and probes unavailable agents, keeping standby agents connected, and moves traffic back to
+     * the primary agent once it is healthy again.
+     */
+    private void checkHealth() {
+        final long now = System.currentTimeMillis();
+        for (final AvroAgentConnection connection : connections) {
+            if (connection.probe(now)) {
+                LOGGER.info("Flume agent " + connection + " is available");
             }
-        } catch (final IOException ioe) {
-            LOGGER.error("Unable to create transceiver", ioe);
-            return null;
         }
-        try {
-            return SpecificRequestor.getClient(AvroSourceProtocol.class, transceiver);
-        } catch (final IOException ioe) {
-            LOGGER.error("Unable to create Avro client");
-            return null;
+        for (int i = 0; backlog != null && i < connections.size(); ++i) {
+            if (connections.get(i).isAvailable()) {
+                markConnected(i);
+            }
+        }
+        if (!selector.isBalancing() && current != 0 && connections.get(0).isAvailable()) {
+            LOGGER.info("Failing back to primary Flume agent " + connections.get(0));
+            setCurrent(0);
+        }
+    }
+
+    /**
+     * Connects to all agents in parallel so that standby agents are ready when the current one fails. The
+     * first agent to connect becomes the current one. Waits at most the startup timeout for it, events logged
+     * in the meantime are held in the backlog.
+     */
+    private void connect(final String shortName) {
+        final AtomicInteger remaining = new AtomicInteger(connections.size());
+        final AtomicBoolean connected = new AtomicBoolean(false);
+        final CountDownLatch started = new CountDownLatch(1);
+        for (int i = 0; i < connections.size(); ++i) {
+            final int index = i;
+            final Thread connector = new DaemonThreadFactory("FlumeAvroConnect-" + shortName + "-" + i).newThread(
+                new Runnable() {
+                    public void run() {
+                        if (connections.get(index).connect()) {
+                            connected.set(true);
+                            markConnected(index);
+                            started.countDown();
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            if (!connected.get()) {
+                                LOGGER.error("Flume manager " + getName() + " was unable to connect to any agents");
+                            }
+                            drainBacklog();
+                            started.countDown();
+                        }
+                    }
+                });
+            connectors.add(connector);
+            connector.start();
+        }
+        if (config.getStartupTimeout() > 0) {
+            try {
+                started.await(config.getStartupTimeout(), TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
     @Override
     protected void releaseSub() {
-        if (transceiver != null) {
+        healthChecker.shutdownNow();
+        scheduler.shutdown();
+        for (final Thread connector : connectors) {
+            try {
+                connector.join(config.getConnectTimeout());
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drainBacklog();
+        try {
+            flush();
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Unable to flush pending batch for " + getName(), ex);
+        }
+        for (final AvroAgentConnection connection : connections) {
+            connection.awaitOutstanding(config.getRequestTimeout());
+        }
+        if (retrier != null) {
+            retrier.shutdown();
+            try {
+                retrier.awaitTermination(config.getRequestTimeout(), TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (replayer != null) {
+            running = false;
             try {
-                transceiver.close();
-            } catch (final IOException ioe) {
-                LOGGER.error("Attempt to clean up Avro transceiver failed", ioe);
+                replayer.join(config.getRequestTimeout());
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
             }
+            replayer.interrupt();
+            spill.close();
         }
-        client = null;
+        for (final AvroAgentConnection connection : connections) {
+            connection.close();
+        }
+        SharedTransport.release();
     }
 
     /**
-     * Thread-safe List management of a batch.
+     * Thread-safe List management of a batch. A batch is released when it holds batchSize events,
+     * when its bodies add up to batchBytes or, through {@link #getIfOlderThan(long)}, once its first
+     * event has lingered long enough.
      */
-    private static class EventList extends ArrayList<AvroFlumeEvent> {
+    static class EventList extends ArrayList<AvroFlumeEvent> {
 
         /**
          * Generated serial version ID.
          */
         private static final long serialVersionUID = -1599817377315957495L;
 
-        public synchronized List<AvroFlumeEvent> addAndGet(final AvroFlumeEvent event, final int batchSize) {
+        private final int batchSize;
+        private final long batchBytes;
+        private long bytes = 0;
+        private long firstEventMillis = 0;
+
+        public EventList(final int batchSize, final long batchBytes) {
+            this.batchSize = batchSize;
+            this.batchBytes = batchBytes;
+        }
+
+        public synchronized List<AvroFlumeEvent> addAndGet(final AvroFlumeEvent event, final int size) {
+            if (isEmpty()) {
+                firstEventMillis = System.currentTimeMillis();
+            }
             super.add(event);
-            if (this.size() >= batchSize) {
-                final List<AvroFlumeEvent> events = new ArrayList<AvroFlumeEvent>();
-                events.addAll(this);
-                clear();
-                return events;
+            bytes += size;
+            if (this.size() >= batchSize || (batchBytes > 0 && bytes >= batchBytes)) {
+                return take();
             } else {
                 return null;
             }
         }
+
+        public synchronized List<AvroFlumeEvent> getIfOlderThan(final long lingerMillis) {
+            if (isEmpty() || System.currentTimeMillis() - firstEventMillis < lingerMillis) {
+                return null;
+            }
+            return take();
+        }
+
+        private List<AvroFlumeEvent> take() {
+            final List<AvroFlumeEvent> events = new EncodedBatch(this);
+            clear();
+            bytes = 0;
+            return events;
+        }
     }
 
     /**
@@ -284,18 +717,35 @@ public class FlumeAvroManager extends AbstractFlumeManager {
     private static class FactoryData {
         private final String name;
         private final List<FlumeAgent> agents;
-        private final int batchSize;
+        private final FlumeAvroConfig config;
 
         /**
          * Constructor.
          * @param name The name of the Appender.
          * @param agents The agents.
-         * @param batchSize The number of events to include in a batch.
+         * @param config The batching and connection settings.
          */
-        public FactoryData(final String name, final List<FlumeAgent> agents, final int batchSize) {
+        public FactoryData(final String name, final List<FlumeAgent> agents, final FlumeAvroConfig config) {
             this.name = name;
             this.agents = agents;
-            this.batchSize = batchSize;
+            this.config = config;
+        }
+    }
+
+    /**
+     * Creates the manager's background threads.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+
+        public DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
@@ -313,7 +763,7 @@ public class FlumeAvroManager extends AbstractFlumeManager {
         public FlumeAvroManager createManager(final String name, final FactoryData data) {
             try {
 
-                return new FlumeAvroManager(name, data.name, data.agents, data.batchSize);
+                return new FlumeAvroManager(name, data.name, data.agents, data.config);
             } catch (final Exception ex) {
                 LOGGER.error("Could not create FlumeAvroManager", ex);
             }
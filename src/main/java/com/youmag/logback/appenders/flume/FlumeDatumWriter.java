@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A SpecificDatumWriter that writes map keys, in practice the header names of the events, from a cache of
+ * their UTF-8 encodings. Avro 1.7 would otherwise convert every key to a String and encode it again for every
+ * event. Map values are still encoded as they are written.
+ * @param <D> The type of the datum.
+ */
+public class FlumeDatumWriter<D> extends SpecificDatumWriter<D> {
+    /** Bound of the cache, header names are expected to come from a small fixed set. */
+    private static final int MAX_CACHED_KEYS = 1024;
+
+    private static final ConcurrentMap<String, Utf8> KEYS = new ConcurrentHashMap<String, Utf8>();
+
+    /**
+     * Constructor.
+     * @param schema The schema of the data written.
+     */
+    public FlumeDatumWriter(final Schema schema) {
+        super(schema);
+    }
+
+    /**
+     * Returns the UTF-8 encoding of a header name, cached while the cache is not full.
+     * @param key The header name.
+     * @return Its encoding, not to be modified.
+     */
+    static Utf8 encodeKey(final Object key) {
+        if (key instanceof Utf8) {
+            return (Utf8) key;
+        }
+        final String name = key.toString();
+        Utf8 encoded = KEYS.get(name);
+        if (encoded == null) {
+            encoded = new Utf8(name);
+            if (KEYS.size() < MAX_CACHED_KEYS) {
+                final Utf8 previous = KEYS.putIfAbsent(name, encoded);
+                if (previous != null) {
+                    encoded = previous;
+                }
+            }
+        }
+        return encoded;
+    }
+
+    @Override
+    protected void writeMap(final Schema schema, final Object datum, final Encoder out) throws IOException {
+        final Schema valueSchema = schema.getValueType();
+        out.writeMapStart();
+        out.setItemCount(getMapSize(datum));
+        for (final Map.Entry<Object, Object> entry : getMapEntries(datum)) {
+            out.startItem();
+            out.writeString(encodeKey(entry.getKey()));
+            write(valueSchema, entry.getValue(), out);
+        }
+        out.writeMapEnd();
+    }
+}
@@ -36,6 +36,8 @@ public class FlumeEmbeddedManager extends AbstractFlumeManager {
 
     private static final String IN_MEMORY = "InMemory";
 
+    private static final int MIN_TRANSACTION_CAPACITY = 100;
+
     private final FlumeNode node;
 
     private final LogbackEventSource source;
@@ -57,6 +59,7 @@ public class FlumeEmbeddedManager extends AbstractFlumeManager {
             throw new IllegalStateException("No Source has been created for Appender " + this.shortName);
         }
         source  = (LogbackEventSource) runner.getSource();
+        source.setMetrics(getMetrics());
     }
 
     /**
@@ -102,6 +105,11 @@ public class FlumeEmbeddedManager extends AbstractFlumeManager {
         source.send(event);
     }
 
+    @Override
+    public void send(final List<FlumeEvent> events, final int delay, final int retries) {
+        source.send(events);
+    }
+
     @Override
     protected void releaseSub() {
         node.stop();
@@ -174,6 +182,8 @@ public class FlumeEmbeddedManager extends AbstractFlumeManager {
             if (agents != null && agents.size() > 0) {
                 props.put(name + ".sources", FlumeEmbeddedManager.SOURCE_NAME);
                 props.put(name + ".sources." + FlumeEmbeddedManager.SOURCE_NAME + ".type", SOURCE_TYPE);
+                props.put(name + ".sources." + FlumeEmbeddedManager.SOURCE_NAME + "." + LogbackEventSource.BATCH_SIZE,
+                    Integer.toString(batchSize));
 
                 if (dataDir != null && dataDir.length() > 0) {
                     if (dataDir.equals(IN_MEMORY)) {
@@ -195,6 +205,14 @@ public class FlumeEmbeddedManager extends AbstractFlumeManager {
                     props.put(name + ".channels.primary.type", "file");
                 }
 
+                if (batchSize > MIN_TRANSACTION_CAPACITY) {
+                    // A group commit writes up to batchSize events in one transaction.
+                    props.put(name + ".channels.primary.transactionCapacity", Integer.toString(batchSize));
+                    if (IN_MEMORY.equals(dataDir)) {
+                        props.put(name + ".channels.primary.capacity", Integer.toString(batchSize * 10));
+                    }
+                }
+
                 final StringBuilder sb = new StringBuilder();
                 String leading = "";
                 int priority = agents.size();
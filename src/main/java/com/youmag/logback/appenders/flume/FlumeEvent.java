@@ -19,26 +19,17 @@ package com.youmag.logback.appenders.flume;
 
 import org.apache.flume.event.SimpleEvent;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.LogbackException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
 
 public class FlumeEvent extends SimpleEvent {
-    private static final String DEFAULT_MDC_PREFIX = "mdc:";
-    private static final String DEFAULT_EVENT_PREFIX = "";
     //private static final String EVENT_TYPE = "eventType";
     //private static final String EVENT_ID = "eventId";
-    private static final String GUID = "guId";
-    private static final String TIMESTAMP = "timeStamp";;
+    static final String GUID = "guId";
+    static final String TIMESTAMP = "timeStamp";
     private final ILoggingEvent event;
-    private final Map<String, String> ctx = new HashMap<String, String>();
     private final boolean compress;
+    private final boolean compactId;
 
     /**
      * Construct the FlumeEvent.
@@ -51,99 +42,58 @@ public class FlumeEvent extends SimpleEvent {
      * @param compress If true the event body should be compressed.
      */
     public FlumeEvent(final ILoggingEvent event, final String includes, final String excludes, final String required,
-                      String mdcPrefix, String eventPrefix, final boolean compress) {
-    	this.event = event;
-    	this.compress = compress;
-        final Map<String, String> headers = getHeaders();
-        headers.put(TIMESTAMP, Long.toString(event.getTimeStamp()));
-        if (mdcPrefix == null) {
-            mdcPrefix = DEFAULT_MDC_PREFIX;
-        }
-        if (eventPrefix == null) {
-            eventPrefix = DEFAULT_EVENT_PREFIX;
-        }
-        final Map<String, String> mdc = event.getMDCPropertyMap();
-        if (includes != null) {
-            final String[] array = includes.split(",");
-            if (array.length > 0) {
-                for (String str : array) {
-                    str = str.trim();
-                    if (mdc.containsKey(str)) {
-                        ctx.put(str, mdc.get(str));
-                    }
-                }
-            }
-        } else if (excludes != null) {
-            final String[] array = excludes.split(",");
-            if (array.length > 0) {
-                final List<String> list = new ArrayList<String>(array.length);
-                for (final String value : array) {
-                    list.add(value.trim());
-                }
-                for (final Map.Entry<String, String> entry : mdc.entrySet()) {
-                    if (!list.contains(entry.getKey())) {
-                        ctx.put(entry.getKey(), entry.getValue());
-                    }
-                }
-            }
-        } else {
-            ctx.putAll(mdc);
-        }
-
-        if (required != null) {
-            final String[] array = required.split(",");
-            if (array.length > 0) {
-                for (String str : array) {
-                    str = str.trim();
-                    if (!mdc.containsKey(str)) {
-                        throw new LogbackException("Required key " + str + " is missing from the MDC");
-                    }
-                }
-            }
-        }
-
-        /*
-        final String message = event.getMessage();
-        if (message instanceof MapMessage) {
-            if (message instanceof StructuredDataMessage) {
-                addStructuredData(eventPrefix, headers, (StructuredDataMessage) message);
-            }
-            addMapData(eventPrefix, headers, (MapMessage) message);
-        }
-        */
-
-        addContextData(mdcPrefix, headers, ctx);
+                      final String mdcPrefix, final String eventPrefix, final boolean compress) {
+        this(event, new MdcProjection(includes, excludes, required, mdcPrefix, eventPrefix), compress);
+    }
 
-        addGuid(headers);
+    /**
+     * Construct the FlumeEvent.
+     * @param event The logback ILoggingEvent.
+     * @param projection The compiled MDC rules.
+     * @param compress If true the event body should be compressed.
+     */
+    public FlumeEvent(final ILoggingEvent event, final MdcProjection projection, final boolean compress) {
+        this(event, projection, compress, false);
     }
 
-    /* 
-    protected void addStructuredData(final String prefix, final Map<String, String> fields,
-                                     final StructuredDataMessage msg) {
-        fields.put(prefix + EVENT_TYPE, msg.getType());
-        final StructuredDataId id = msg.getId();
-        fields.put(prefix + EVENT_ID, id.getName());
+    /**
+     * Construct the FlumeEvent.
+     * @param event The logback ILoggingEvent.
+     * @param projection The compiled MDC rules.
+     * @param compress If true the event body should be compressed.
+     * @param compactId If true the event id is written as 22 characters of base64 instead of 36 of hex.
+     */
+    public FlumeEvent(final ILoggingEvent event, final MdcProjection projection, final boolean compress,
+                      final boolean compactId) {
+        this(event, compress, compactId);
+        project(projection);
     }
 
-    protected void addMapData(final String prefix, final Map<String, String> fields, final MapMessage msg) {
-        final Map<String, String> data = msg.getData();
-        for (final Map.Entry<String, String> entry : data.entrySet()) {
-            fields.put(prefix + entry.getKey(), entry.getValue());
-        }
+    /**
+     * Construct a FlumeEvent without headers, to be projected later by {@link #project(MdcProjection)}.
+     * @param event The logback ILoggingEvent.
+     * @param compress If true the event body should be compressed.
+     * @param compactId If true the event id is written as 22 characters of base64 instead of 36 of hex.
+     */
+    FlumeEvent(final ILoggingEvent event, final boolean compress, final boolean compactId) {
+    	this.event = event;
+    	this.compress = compress;
+    	this.compactId = compactId;
     }
-	*/
-    
-    protected void addContextData(final String prefix, final Map<String, String> fields,
-                                  final Map<String, String> context) {
-        for (final Map.Entry<String, String> entry : context.entrySet()) {
-            if (entry.getKey() != null && entry.getValue() != null) {
-                fields.put(prefix + entry.getKey(), entry.getValue());
-            }
-        }
+
+    /**
+     * Add the timestamp, the projected MDC and the id to the headers.
+     * @param projection The compiled MDC rules.
+     */
+    void project(final MdcProjection projection) {
+        final Map<String, String> headers = getHeaders();
+        headers.put(TIMESTAMP, Long.toString(event.getTimeStamp()));
+        projection.project(event.getMDCPropertyMap(), headers);
+        addGuid(headers);
     }
 
     protected void addGuid(final Map<String, String> fields) {
-        fields.put(GUID, UUIDUtil.getTimeBasedUUID().toString());
+        fields.put(GUID, compactId ? UUIDUtil.getCompactTimeBasedId() : UUIDUtil.getTimeBasedId());
     }
 
     /**
@@ -157,15 +107,7 @@ public class FlumeEvent extends SimpleEvent {
             return;
         }
         if (compress) {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try {
-                final GZIPOutputStream os = new GZIPOutputStream(baos);
-                os.write(body);
-                os.close();
-            } catch (final IOException ioe) {
-                throw new LogbackException("Unable to compress message", ioe);
-            }
-            super.setBody(baos.toByteArray());
+            super.setBody(DeflaterPool.gzip(body));
         } else {
             super.setBody(body);
         }
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the events of an avro appender over several lanes, each a FlumeAvroManager with its own
+ * connections, batch and lock, so that serialization and RPCs run in parallel. The lane of an event is chosen
+ * by the value of an MDC key, or by its thread name when the key is not set, so events sharing a key keep
+ * their order. Each event is stamped with its lane and its position in the lane, letting downstream
+ * consumers restore the order of a lane.
+ */
+public class FlumeLaneManager extends AbstractFlumeManager {
+    /** Header holding the index of the lane an event was sent through. */
+    public static final String LANE = "lane";
+
+    /** Header holding the position of an event in its lane. */
+    public static final String SEQUENCE = "laneSequence";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlumeLaneManager.class);
+
+    private static LaneManagerFactory factory = new LaneManagerFactory();
+
+    private final Lane[] lanes;
+
+    private final String laneKey;
+
+    /**
+     * Constructor.
+     * @param name The unique name of this manager.
+     * @param shortName The name of the appender.
+     * @param agents The agents every lane connects to.
+     * @param config The settings, shared by the lanes.
+     */
+    protected FlumeLaneManager(final String name, final String shortName, final List<FlumeAgent> agents,
+                               final FlumeAvroConfig config) {
+        super(name);
+        this.laneKey = config.getLaneKey();
+        this.lanes = new Lane[config.getLanes()];
+        for (int i = 0; i < lanes.length; ++i) {
+            lanes[i] = new Lane(i, FlumeAvroManager.getManager(shortName, agents, config.forLane(i), i));
+        }
+    }
+
+    /**
+     * Returns a FlumeLaneManager.
+     * @param name The name of the appender.
+     * @param agents The agents to use.
+     * @param config The batching and connection settings, with the number of lanes and their key.
+     * @return A FlumeLaneManager.
+     */
+    public static FlumeLaneManager getManager(final String name, final List<FlumeAgent> agents,
+                                              final FlumeAvroConfig config) {
+        if (agents == null || agents.size() == 0) {
+            throw new IllegalArgumentException("At least one agent is required");
+        }
+
+        final StringBuilder sb = new StringBuilder("FlumeLanes[");
+        boolean first = true;
+        for (final FlumeAgent agent : agents) {
+            if (!first) {
+                sb.append(",");
+            }
+            sb.append(agent.getHost()).append(":").append(agent.getPort());
+            first = false;
+        }
+        sb.append("]");
+        return (FlumeLaneManager) getManager(sb.toString(), factory, new FactoryData(name, agents, config));
+    }
+
+    /**
+     * @return The number of lanes.
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * @param index The index of a lane.
+     * @return The manager sending the events of the lane.
+     */
+    public FlumeAvroManager getLane(final int index) {
+        return lanes[index].manager;
+    }
+
+    /**
+     * Chooses the lane of an event.
+     * @param event The event.
+     * @return The index of its lane.
+     */
+    int select(final FlumeEvent event) {
+        final ILoggingEvent loggingEvent = event.getEvent();
+        String key = null;
+        if (laneKey != null) {
+            final Map<String, String> mdc = loggingEvent.getMDCPropertyMap();
+            key = mdc == null ? null : mdc.get(laneKey);
+        }
+        if (key == null) {
+            key = loggingEvent.getThreadName();
+        }
+        int hash = key.hashCode();
+        // Spread the bits of similar keys such as consecutive request ids.
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    @Override
+    public void send(final FlumeEvent event, final int delay, final int retries) {
+        lanes[select(event)].send(event, delay, retries);
+    }
+
+    @Override
+    protected void releaseSub() {
+        for (final Lane lane : lanes) {
+            try {
+                lane.manager.release();
+            } catch (final RuntimeException ex) {
+                LOGGER.warn("Unable to release lane " + lane.index + " of " + getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * One lane: its manager and the sequence of its events.
+     */
+    private static class Lane {
+        private final int index;
+        private final String laneHeader;
+        private final FlumeAvroManager manager;
+        private final AtomicLong sequence = new AtomicLong();
+
+        public Lane(final int index, final FlumeAvroManager manager) {
+            this.index = index;
+            this.laneHeader = Integer.toString(index);
+            this.manager = manager;
+        }
+
+        /**
+         * Numbers and sends an event. Events logged concurrently on the lane may reach the manager out of the
+         * order of their sequence numbers; consumers restore it from the header.
+         */
+        public void send(final FlumeEvent event, final int delay, final int retries) {
+            event.getHeaders().put(LANE, laneHeader);
+            event.getHeaders().put(SEQUENCE, Long.toString(sequence.getAndIncrement()));
+            manager.send(event, delay, retries);
+        }
+    }
+
+    /**
+     * Factory data.
+     */
+    private static class FactoryData {
+        private final String name;
+        private final List<FlumeAgent> agents;
+        private final FlumeAvroConfig config;
+
+        /**
+         * Constructor.
+         * @param name The name of the Appender.
+         * @param agents The agents.
+         * @param config The settings.
+         */
+        public FactoryData(final String name, final List<FlumeAgent> agents, final FlumeAvroConfig config) {
+            this.name = name;
+            this.agents = agents;
+            this.config = config;
+        }
+    }
+
+    /**
+     * Lane Manager Factory.
+     */
+    private static class LaneManagerFactory implements ManagerFactory<FlumeLaneManager, FactoryData> {
+
+        /**
+         * Create the FlumeLaneManager.
+         * @param name The name of the entity to manage.
+         * @param data The data required to create the entity.
+         * @return The FlumeLaneManager.
+         */
+        public FlumeLaneManager createManager(final String name, final FactoryData data) {
+            try {
+                return new FlumeLaneManager(name, data.name, data.agents, data.config);
+            } catch (final Exception ex) {
+                LOGGER.error("Could not create FlumeLaneManager", ex);
+            }
+            return null;
+        }
+    }
+}
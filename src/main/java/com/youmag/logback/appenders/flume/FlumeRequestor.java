@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.ipc.Transceiver;
+import org.apache.avro.ipc.specific.SpecificRequestor;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The requestor of an AvroAgentConnection. Requests are written by a FlumeDatumWriter, created once per
+ * message instead of once per request, and an {@link EncodedBatch} is written from its cached encoding.
+ */
+public class FlumeRequestor extends SpecificRequestor {
+    private final ConcurrentMap<Schema, DatumWriter<Object>> writers =
+        new ConcurrentHashMap<Schema, DatumWriter<Object>>();
+
+    /**
+     * Constructor.
+     * @param iface The protocol interface.
+     * @param transceiver The transceiver of the connection.
+     * @throws IOException if the protocol cannot be read.
+     */
+    public FlumeRequestor(final Class<?> iface, final Transceiver transceiver) throws IOException {
+        super(iface, transceiver);
+    }
+
+    @Override
+    public void writeRequest(final Schema schema, final Object request, final Encoder out) throws IOException {
+        final Object[] args = (Object[]) request;
+        if (args.length == 1 && args[0] instanceof EncodedBatch) {
+            // appendBatch, whose only parameter is encoded as the batch itself.
+            out.writeFixed(((EncodedBatch) args[0]).getEncoded());
+            return;
+        }
+        super.writeRequest(schema, request, out);
+    }
+
+    @Override
+    protected DatumWriter<Object> getDatumWriter(final Schema schema) {
+        DatumWriter<Object> writer = writers.get(schema);
+        if (writer == null) {
+            writer = new FlumeDatumWriter<Object>(schema);
+            writers.put(schema, writer);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.core.spi.ContextAware;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Formats the events drained by an {@link AsyncSender} in parallel: the drained list is split in contiguous
+ * slices, one formatted by the sender thread and the others by a pool of worker threads, and the sender waits
+ * for all of them before handing the list to the manager, so the order of the events is kept. Formatting is
+ * whatever the {@link Formatter} does, typically header projection, layout and compression. Events dropped
+ * before they are drained are never formatted.
+ */
+final class FormatStage {
+    /** The smallest number of events worth handing to another thread. */
+    static final int MIN_SLICE = 16;
+
+    /**
+     * Formats one event. Called concurrently from several threads.
+     */
+    interface Formatter {
+        /**
+         * @param event The event, whose headers and body are to be set.
+         */
+        void format(FlumeEvent event);
+    }
+
+    private final Formatter formatter;
+    private final DropCounter dropped;
+    private final ContextAware status;
+    private final ExecutorService workers;
+    private final int threads;
+
+    /**
+     * Constructor.
+     * @param name The name of the owning appender, used to name the worker threads.
+     * @param threads The number of worker threads, in addition to the sender thread.
+     * @param formatter Formats one event.
+     * @param dropped Counts the events that fail to be formatted.
+     * @param status Where formatting errors are reported.
+     */
+    public FormatStage(final String name, final int threads, final Formatter formatter, final DropCounter dropped,
+                       final ContextAware status) {
+        this.threads = Math.max(1, threads);
+        this.formatter = formatter;
+        this.dropped = dropped;
+        this.status = status;
+        this.workers = Executors.newFixedThreadPool(this.threads,
+            new SharedTransport.NamedThreadFactory("FlumeFormatter-" + name + "-"));
+    }
+
+    /**
+     * Format the events in place. Events that fail to be formatted are reported, counted as dropped and
+     * removed from the list.
+     * @param events The events, in the order they are to be sent.
+     */
+    public void format(final List<FlumeEvent> events) {
+        final int slices = Math.min(threads + 1, (events.size() + MIN_SLICE - 1) / MIN_SLICE);
+        final boolean[] failed = new boolean[events.size()];
+        if (slices <= 1) {
+            formatSlice(events, 0, events.size(), failed);
+        } else {
+            final int size = (events.size() + slices - 1) / slices;
+            final List<Future<?>> futures = new ArrayList<Future<?>>(slices - 1);
+            for (int from = size; from < events.size(); from += size) {
+                final int start = from;
+                final int end = Math.min(events.size(), from + size);
+                try {
+                    futures.add(workers.submit(new Callable<Object>() {
+                        public Object call() {
+                            formatSlice(events, start, end, failed);
+                            return null;
+                        }
+                    }));
+                } catch (final RejectedExecutionException ex) {
+                    // Stopped while the sender still drains: format on this thread.
+                    formatSlice(events, start, end, failed);
+                }
+            }
+            formatSlice(events, 0, size, failed);
+            await(futures);
+        }
+        for (int i = failed.length - 1; i >= 0; --i) {
+            if (failed[i]) {
+                events.remove(i);
+            }
+        }
+    }
+
+    private void formatSlice(final List<FlumeEvent> events, final int from, final int to, final boolean[] failed) {
+        for (int i = from; i < to; ++i) {
+            final FlumeEvent event = events.get(i);
+            try {
+                formatter.format(event);
+            } catch (final RuntimeException ex) {
+                status.addError("Unable to format event", ex);
+                dropped.record(event);
+                failed[i] = true;
+            }
+        }
+    }
+
+    private static void await(final List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (final Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                } catch (final ExecutionException ex) {
+                    // Exceptions are handled per event, only an Error can get here.
+                    if (ex.getCause() instanceof Error) {
+                        throw (Error) ex.getCause();
+                    }
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void stop() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * Registers the metrics MBeans of appenders and managers with the platform MBean server.
+ */
+final class Jmx {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Jmx.class);
+
+    private static final String DOMAIN = "com.youmag.logback.appenders.flume";
+
+    private Jmx() {
+    }
+
+    /**
+     * @param type The type key of the ObjectName.
+     * @param name The name key of the ObjectName, quoted as needed.
+     * @param mbean The MBean.
+     * @return The ObjectName, or null if the MBean could not be registered.
+     */
+    static ObjectName register(final String type, final String name, final Object mbean) {
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+            return objectName;
+        } catch (final Exception ex) {
+            LOGGER.warn("Unable to register metrics of " + type + " " + name, ex);
+            return null;
+        }
+    }
+
+    static void unregister(final ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (final Exception ex) {
+            LOGGER.warn("Unable to unregister " + objectName, ex);
+        }
+    }
+}
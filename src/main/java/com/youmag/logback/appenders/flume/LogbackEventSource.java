@@ -17,36 +17,206 @@
 package com.youmag.logback.appenders.flume;
 
 import org.apache.flume.ChannelException;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
 import org.apache.flume.EventDrivenSource;
+import org.apache.flume.conf.Configurable;
 import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.source.AbstractSource;
 
-public class LogbackEventSource extends AbstractSource implements EventDrivenSource {
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Source fed by the FlumeEmbeddedManager. Concurrent callers are grouped so that the events of many threads
+ * are written to the channel in a single transaction (group commit) instead of one transaction per event.
+ */
+public class LogbackEventSource extends AbstractSource implements EventDrivenSource, Configurable {
+    /** Configuration key for the maximum number of events written in one channel transaction. */
+    public static final String BATCH_SIZE = "batchSize";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     private final SourceCounter sourceCounter = new SourceCounter("logback");
 
+    private final Object lock = new Object();
+
+    private Group open = new Group();
+
+    private boolean committing = false;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private volatile ManagerMetrics metrics = new ManagerMetrics();
+
     public LogbackEventSource() {
         setName("LogbackEvent");
     }
 
+    public void configure(final Context context) {
+        batchSize = context.getInteger(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        if (batchSize <= 0) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+    }
+
     @Override
     public synchronized void start() {
+        sourceCounter.start();
         super.start();
     }
 
     @Override
     public synchronized void stop() {
         super.stop();
+        sourceCounter.stop();
+    }
+
+    /**
+     * @return The Flume counters of this source, also published by Flume's own monitoring.
+     */
+    public SourceCounter getSourceCounter() {
+        return sourceCounter;
+    }
+
+    /**
+     * @param metrics Where channel transactions are recorded.
+     */
+    public void setMetrics(final ManagerMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public void send(final FlumeEvent event) {
-        sourceCounter.incrementAppendReceivedCount();
-        sourceCounter.incrementEventReceivedCount();
+        send(Collections.<Event>singletonList(event));
+    }
+
+    /**
+     * Writes events to the channel. The calling thread either joins the group that is waiting for the current
+     * commit to finish or, if no commit is running, commits everything that has been grouped so far. Only the
+     * callers whose events were in a failed transaction see the failure.
+     * @param events The events to write.
+     */
+    public void send(final List<? extends Event> events) {
+        sourceCounter.incrementAppendBatchReceivedCount();
+        sourceCounter.addToEventReceivedCount(events.size());
+        final Group group;
+        final int from;
+        final int to;
+        synchronized (lock) {
+            group = open;
+            from = group.events.size();
+            group.events.addAll(events);
+            to = group.events.size();
+            group.ends.add(to);
+            while (committing && !group.done) {
+                try {
+                    lock.wait();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ChannelException("Interrupted while waiting for the channel", ex);
+                }
+            }
+            if (!group.done) {
+                committing = true;
+                open = new Group();
+            }
+        }
+        if (!group.done) {
+            commit(group);
+        }
+        group.check(from, to);
+        sourceCounter.incrementAppendBatchAcceptedCount();
+        sourceCounter.addToEventAcceptedCount(events.size());
+    }
+
+    /**
+     * Writes a group in transactions of at most batchSize events. Transactions are cut between callers, so
+     * that a failed transaction fails as few callers as possible; only a caller with more than batchSize
+     * events has them split.
+     */
+    private void commit(final Group group) {
+        try {
+            int start = 0;
+            int end = 0;
+            for (final int callerEnd : group.ends) {
+                if (callerEnd - start > batchSize && end > start) {
+                    commit(group, start, end);
+                    start = end;
+                }
+                end = callerEnd;
+                while (end - start > batchSize) {
+                    commit(group, start, start + batchSize);
+                    start += batchSize;
+                }
+            }
+            if (end > start) {
+                commit(group, start, end);
+            }
+        } finally {
+            synchronized (lock) {
+                group.done = true;
+                committing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void commit(final Group group, final int from, final int to) {
+        final List<Event> batch = group.events.subList(from, to);
         try {
-            getChannelProcessor().processEvent(event);
-        } catch (final ChannelException ex) {
-        	throw ex;
+            final long start = System.nanoTime();
+            getChannelProcessor().processEventBatch(batch);
+            metrics.recordLatency(System.nanoTime() - start);
+            long bytes = 0;
+            for (final Event event : batch) {
+                bytes += event.getBody().length;
+            }
+            metrics.recordSent(batch.size(), bytes);
+        } catch (final RuntimeException ex) {
+            metrics.recordFailure();
+            group.failures.add(new Failure(from, to, ex));
+        }
+    }
+
+    /**
+     * Events from all the threads that arrived while the previous group was being committed.
+     */
+    private static class Group {
+        private final List<Event> events = new ArrayList<Event>();
+        /** The end of the events of each caller, in events. */
+        private final List<Integer> ends = new ArrayList<Integer>();
+        private final List<Failure> failures = new ArrayList<Failure>(0);
+        private boolean done = false;
+
+        /**
+         * Fail the caller whose events are from..to if any of them was in a failed transaction.
+         */
+        private void check(final int from, final int to) {
+            for (final Failure failure : failures) {
+                if (failure.from < to && from < failure.to) {
+                    final RuntimeException error = failure.error;
+                    if (error instanceof ChannelException) {
+                        throw new ChannelException(error.getMessage(), error);
+                    }
+                    throw new ChannelException("Unable to write events to the channel", error);
+                }
+            }
+        }
+    }
+
+    /**
+     * A failed transaction: the events from..to of a group.
+     */
+    private static class Failure {
+        private final int from;
+        private final int to;
+        private final RuntimeException error;
+
+        public Failure(final int from, final int to, final RuntimeException error) {
+            this.from = from;
+            this.to = to;
+            this.error = error;
         }
-        sourceCounter.incrementAppendAcceptedCount();
-        sourceCounter.incrementEventAcceptedCount();
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+/**
+ * Counters and histograms of a Flume manager. A request is a call to an agent or, in agent mode, a channel
+ * transaction; its latency is measured from the moment it is issued to its acknowledgement.
+ */
+public final class ManagerMetrics implements ManagerMetricsMBean {
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final StripedCounter eventsOut = new StripedCounter();
+    private final StripedCounter bytesOut = new StripedCounter();
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram latencies = new Histogram();
+    private final StripedCounter failures = new StripedCounter();
+    private final StripedCounter retries = new StripedCounter();
+    private final StripedCounter failovers = new StripedCounter();
+    private final StripedCounter spilled = new StripedCounter();
+    private volatile String currentAgent = null;
+
+    /**
+     * Record events accepted by an agent or by the channel.
+     * @param events The number of events in the request.
+     * @param bytes The size of their bodies.
+     */
+    public void recordSent(final int events, final long bytes) {
+        eventsOut.add(events);
+        bytesOut.add(bytes);
+        batchSizes.record(events);
+    }
+
+    /**
+     * @param nanos The time a request took to be acknowledged.
+     */
+    public void recordLatency(final long nanos) {
+        latencies.record(nanos / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Record a request that failed.
+     */
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Record a request that is sent again after failing asynchronously.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Record a request that had to be sent to another agent than the one first chosen.
+     */
+    public void recordFailover() {
+        failovers.increment();
+    }
+
+    /**
+     * @param events The number of events written to the spill log.
+     */
+    public void recordSpilled(final int events) {
+        spilled.add(events);
+    }
+
+    public void setCurrentAgent(final String currentAgent) {
+        this.currentAgent = currentAgent;
+    }
+
+    public long getEventsOut() {
+        return eventsOut.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    public long getBatchesSent() {
+        return batchSizes.getCount();
+    }
+
+    public double getMeanBatchSize() {
+        return batchSizes.getMean();
+    }
+
+    public long getBatchSizeP50() {
+        return batchSizes.getPercentile(0.5);
+    }
+
+    public long getBatchSizeP99() {
+        return batchSizes.getPercentile(0.99);
+    }
+
+    public long getMaxBatchSize() {
+        return batchSizes.getMax();
+    }
+
+    public double getMeanLatencyMicros() {
+        return latencies.getMean();
+    }
+
+    public long getLatencyP50Micros() {
+        return latencies.getPercentile(0.5);
+    }
+
+    public long getLatencyP99Micros() {
+        return latencies.getPercentile(0.99);
+    }
+
+    public long getLatencyP999Micros() {
+        return latencies.getPercentile(0.999);
+    }
+
+    public long getMaxLatencyMicros() {
+        return latencies.getMax();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    public long getSpilledEvents() {
+        return spilled.get();
+    }
+
+    public String getCurrentAgent() {
+        return currentAgent;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.core.LogbackException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The MDC include, exclude and required rules of an appender, parsed once. Copies the selected MDC entries
+ * into event headers under their prefixed names.
+ */
+public final class MdcProjection {
+    /** The prefix used when none is configured. */
+    public static final String DEFAULT_MDC_PREFIX = "mdc:";
+
+    private static final String DEFAULT_EVENT_PREFIX = "";
+
+    /** Bounds the cache of prefixed names for MDC keys that are not listed in includes. */
+    private static final int MAX_CACHED_KEYS = 1024;
+
+    private final String[] includes;
+    private final String[] prefixedIncludes;
+    private final Set<String> excludes;
+    private final String[] required;
+    private final String mdcPrefix;
+    private final String eventPrefix;
+    private final ConcurrentMap<String, String> prefixedKeys = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Compile the MDC rules.
+     * @param includes A comma separated list of MDC elements to include.
+     * @param excludes A comma separated list of MDC elements to exclude, ignored if includes is set.
+     * @param required A comma separated list of MDC elements that are required to be defined.
+     * @param mdcPrefix The value to prefix to MDC keys.
+     * @param eventPrefix The value to prefix to event keys.
+     */
+    public MdcProjection(final String includes, final String excludes, final String required,
+                         final String mdcPrefix, final String eventPrefix) {
+        this.mdcPrefix = mdcPrefix == null ? DEFAULT_MDC_PREFIX : mdcPrefix;
+        this.eventPrefix = eventPrefix == null ? DEFAULT_EVENT_PREFIX : eventPrefix;
+        if (includes != null) {
+            this.includes = split(includes);
+            this.prefixedIncludes = new String[this.includes.length];
+            for (int i = 0; i < this.includes.length; ++i) {
+                prefixedIncludes[i] = this.mdcPrefix + this.includes[i];
+            }
+            this.excludes = null;
+        } else {
+            this.includes = null;
+            this.prefixedIncludes = null;
+            if (excludes != null) {
+                final Set<String> set = new HashSet<String>();
+                Collections.addAll(set, split(excludes));
+                this.excludes = set;
+            } else {
+                this.excludes = Collections.emptySet();
+            }
+        }
+        this.required = required == null ? new String[0] : split(required);
+    }
+
+    private static String[] split(final String value) {
+        final String[] array = value.split(",");
+        final List<String> list = new ArrayList<String>(array.length);
+        for (final String str : array) {
+            list.add(str.trim());
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Copy the selected MDC entries into the headers.
+     * @param mdc The MDC of the logging event.
+     * @param headers The event headers.
+     * @throws LogbackException if a required key is missing from the MDC.
+     */
+    public void project(final Map<String, String> mdc, final Map<String, String> headers) {
+        for (final String key : required) {
+            if (!mdc.containsKey(key)) {
+                throw new LogbackException("Required key " + key + " is missing from the MDC");
+            }
+        }
+        if (mdc.isEmpty()) {
+            return;
+        }
+        if (includes != null) {
+            for (int i = 0; i < includes.length; ++i) {
+                final String value = mdc.get(includes[i]);
+                if (value != null) {
+                    headers.put(prefixedIncludes[i], value);
+                }
+            }
+            return;
+        }
+        for (final Map.Entry<String, String> entry : mdc.entrySet()) {
+            final String key = entry.getKey();
+            if (key != null && entry.getValue() != null && !excludes.contains(key)) {
+                headers.put(prefixedKey(key), entry.getValue());
+            }
+        }
+    }
+
+    private String prefixedKey(final String key) {
+        String prefixed = prefixedKeys.get(key);
+        if (prefixed == null) {
+            prefixed = mdcPrefix + key;
+            if (prefixedKeys.size() < MAX_CACHED_KEYS) {
+                prefixedKeys.putIfAbsent(key, prefixed);
+            }
+        }
+        return prefixed;
+    }
+
+    public String getMdcPrefix() {
+        return mdcPrefix;
+    }
+
+    public String getEventPrefix() {
+        return eventPrefix;
+    }
+}
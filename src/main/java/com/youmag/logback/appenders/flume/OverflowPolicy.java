@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Decides what {@link AsyncSender#enqueue(FlumeEvent)} does with an event when the sender falls behind.
+ */
+public abstract class OverflowPolicy {
+    /** Wait for room, for at most the overflow timeout if it is positive. */
+    public static final String BLOCK = "block";
+    /** Drop the event that does not fit. */
+    public static final String DROP_NEWEST = "dropNewest";
+    /** Drop the oldest queued events to make room. */
+    public static final String DROP_OLDEST = "dropOldest";
+    /**
+     * Drop TRACE, DEBUG and INFO events once the buffer is 80% full, drop WARN events when it is full and
+     * no room appears within the overflow timeout, and always wait for room for ERROR events.
+     */
+    public static final String DROP_BY_LEVEL = "dropByLevel";
+
+    /** Free space, as a fraction of the capacity, below which dropByLevel sheds INFO and lower. */
+    private static final int SHED_FRACTION = 5;
+
+    /**
+     * Returns a new OverflowPolicy.
+     * @param name One of block, dropNewest, dropOldest or dropByLevel. Defaults to block.
+     * @param timeoutMillis How long block and dropByLevel wait for room.
+     * @return The OverflowPolicy.
+     */
+    public static OverflowPolicy forName(final String name, final long timeoutMillis) {
+        if (DROP_NEWEST.equalsIgnoreCase(name)) {
+            return new DropNewest();
+        }
+        if (DROP_OLDEST.equalsIgnoreCase(name)) {
+            return new DropOldest();
+        }
+        if (DROP_BY_LEVEL.equalsIgnoreCase(name)) {
+            return new DropByLevel(timeoutMillis);
+        }
+        return new Block(timeoutMillis);
+    }
+
+    /**
+     * Queue the event or drop it, or an older one, through the given sender.
+     * @param sender The sender.
+     * @param event The event.
+     */
+    public abstract void enqueue(AsyncSender sender, FlumeEvent event);
+
+    private static class Block extends OverflowPolicy {
+        private final long timeoutMillis;
+
+        public Block(final long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public void enqueue(final AsyncSender sender, final FlumeEvent event) {
+            if (!sender.offer(event, timeoutMillis > 0 ? timeoutMillis : -1)) {
+                sender.drop(event);
+            }
+        }
+    }
+
+    private static class DropNewest extends OverflowPolicy {
+        @Override
+        public void enqueue(final AsyncSender sender, final FlumeEvent event) {
+            if (!sender.offer(event, 0)) {
+                sender.drop(event);
+            }
+        }
+    }
+
+    private static class DropOldest extends OverflowPolicy {
+        @Override
+        public void enqueue(final AsyncSender sender, final FlumeEvent event) {
+            while (!sender.offer(event, 0)) {
+                sender.dropOldest();
+            }
+        }
+    }
+
+    private static class DropByLevel extends OverflowPolicy {
+        private final long timeoutMillis;
+
+        public DropByLevel(final long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public void enqueue(final AsyncSender sender, final FlumeEvent event) {
+            final int level = event.getEvent().getLevel().toInt();
+            final int free = sender.getQueueCapacity() - sender.getQueueSize();
+            if (level <= Level.INFO_INT && free * SHED_FRACTION < sender.getQueueCapacity()) {
+                sender.drop(event);
+                return;
+            }
+            if (!sender.offer(event, level >= Level.ERROR_INT ? -1 : timeoutMillis)) {
+                sender.drop(event);
+            }
+        }
+    }
+}
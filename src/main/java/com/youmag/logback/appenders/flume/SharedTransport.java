@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Netty transport shared by the connections of all FlumeAvroManagers: one ChannelFactory and one set of
+ * boss and worker threads, however many appenders, agents and reconnections there are. Each manager acquires
+ * it when created and releases it when released; the threads are stopped with the last manager.
+ */
+final class SharedTransport {
+    private static int references = 0;
+    private static ChannelFactory factory;
+    private static Shared shared;
+
+    private SharedTransport() {
+    }
+
+    /**
+     * Acquire the shared transport, creating it if needed.
+     * @return A ChannelFactory that ignores releaseExternalResources, as NettyTransceiver.close() calls it.
+     */
+    public static synchronized ChannelFactory acquire() {
+        if (references++ == 0) {
+            final ExecutorService boss = Executors.newCachedThreadPool(new NamedThreadFactory("FlumeAvroBoss-"));
+            final ExecutorService workers =
+                Executors.newCachedThreadPool(new NamedThreadFactory("FlumeAvroWorker-"));
+            factory = new NioClientSocketChannelFactory(boss, workers);
+            shared = new Shared(factory);
+        }
+        return shared;
+    }
+
+    /**
+     * Release the shared transport, stopping its threads if this was the last reference.
+     */
+    public static synchronized void release() {
+        if (references == 0 || --references > 0) {
+            return;
+        }
+        final ChannelFactory f = factory;
+        factory = null;
+        shared = null;
+        f.releaseExternalResources();
+    }
+
+    /**
+     * @return The number of managers holding the transport.
+     */
+    static synchronized int getReferences() {
+        return references;
+    }
+
+    /**
+     * The view of the factory handed to the connections.
+     */
+    private static class Shared implements ChannelFactory {
+        private final ChannelFactory delegate;
+
+        public Shared(final ChannelFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        public Channel newChannel(final ChannelPipeline pipeline) {
+            return delegate.newChannel(pipeline);
+        }
+
+        public void releaseExternalResources() {
+            // Owned by SharedTransport, released with the last manager.
+        }
+    }
+
+    /**
+     * Creates named daemon threads so that the transport never keeps the JVM alive.
+     */
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        public NamedThreadFactory(final String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A local write-ahead log for batches the FlumeAvroManager could not deliver. Batches are appended to
+ * memory-mapped segment files and read back in order for replay. The read position is kept in a small cursor
+ * file, so undelivered batches survive a restart. Once the log grows beyond its size limit the oldest segment
+ * is dropped.
+ * <p>
+ * Each record is laid out as: payload length (int), CRC32 of the payload (int), flags (byte), payload. A zero
+ * length marks the end of the data in a segment. The payload is the Avro binary encoding of the batch,
+ * deflated when compression is enabled, in which case it starts with the uncompressed length (int).
+ */
+public class SpillLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillLog.class);
+
+    private static final String SEGMENT_PREFIX = "spill-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "spill.cursor";
+    private static final int RECORD_HEADER = 9;
+    private static final int CURSOR_SIZE = 12;
+    private static final byte COMPRESSED = 1;
+    private static final Schema BATCH_SCHEMA = Schema.createArray(AvroFlumeEvent.SCHEMA$);
+
+    private final File dir;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final boolean compress;
+    private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+    private final SpecificDatumWriter<List<AvroFlumeEvent>> writer =
+        new FlumeDatumWriter<List<AvroFlumeEvent>>(BATCH_SCHEMA);
+    private final SpecificDatumReader<List<AvroFlumeEvent>> reader =
+        new SpecificDatumReader<List<AvroFlumeEvent>>(BATCH_SCHEMA);
+    private final Utf8Buffer encoded = new Utf8Buffer();
+    private final MappedByteBuffer cursor;
+    private BinaryEncoder encoder;
+    private BinaryDecoder decoder;
+
+    private long writeSeq;
+    private MappedByteBuffer writeBuffer;
+
+    private long readSeq;
+    private ByteBuffer readBuffer;
+    private int nextReadOffset = -1;
+
+    /**
+     * Open or create the log.
+     * @param dir The directory holding the segments.
+     * @param segmentSize The size of each segment file.
+     * @param maxBytes The maximum size of all segments together.
+     * @param compress If true batches are deflated before being written.
+     * @throws IOException if the directory or the segments cannot be opened.
+     */
+    public SpillLog(final File dir, final int segmentSize, final long maxBytes, final boolean compress)
+        throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxBytes = Math.max(maxBytes, segmentSize);
+        this.compress = compress;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create spill directory " + dir);
+        }
+        final File[] files = dir.listFiles(new FilenameFilter() {
+            public boolean accept(final File d, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        for (final File file : files) {
+            final String name = file.getName();
+            try {
+                segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length())), file);
+            } catch (final NumberFormatException ex) {
+                LOGGER.warn("Ignoring unexpected file " + file);
+            }
+        }
+        cursor = map(new File(dir, CURSOR_FILE), CURSOR_SIZE, true);
+        if (segments.isEmpty()) {
+            writeSeq = 0;
+            writeBuffer = map(segmentFile(writeSeq), segmentSize, true);
+            segments.put(writeSeq, segmentFile(writeSeq));
+        } else {
+            writeSeq = segments.lastKey();
+            final File last = segments.get(writeSeq);
+            writeBuffer = map(last, (int) Math.max(last.length(), segmentSize), true);
+            writeBuffer.position(endOfData(writeBuffer));
+        }
+        readSeq = cursor.getLong(0);
+        int readOffset = cursor.getInt(8);
+        if (!segments.containsKey(readSeq)) {
+            readSeq = segments.firstKey();
+            readOffset = 0;
+        }
+        openRead(readSeq);
+        readBuffer.position(readOffset);
+    }
+
+    private File segmentFile(final long seq) {
+        return new File(dir, String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(final File file, final int size, final boolean write) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, write ? "rw" : "r");
+        try {
+            return raf.getChannel().map(write ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0,
+                write ? size : Math.min(size, raf.length()));
+        } finally {
+            // The mapping stays valid once the file is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * @return The offset following the last valid record.
+     */
+    private static int endOfData(final MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + RECORD_HEADER <= buffer.capacity()) {
+            final int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER + length > buffer.capacity()) {
+                break;
+            }
+            offset += RECORD_HEADER + length;
+        }
+        return offset;
+    }
+
+    private void openRead(final long seq) throws IOException {
+        readSeq = seq;
+        readBuffer = seq == writeSeq ? writeBuffer.duplicate() : map(segments.get(seq), Integer.MAX_VALUE, false);
+        readBuffer.position(0);
+        nextReadOffset = -1;
+    }
+
+    /**
+     * Append a batch.
+     * @param batch The events.
+     * @throws IOException if the batch cannot be written.
+     */
+    public synchronized void append(final List<AvroFlumeEvent> batch) throws IOException {
+        encoded.reset();
+        if (compress) {
+            encoded.write(new byte[4], 0, 4);
+        }
+        if (batch instanceof EncodedBatch) {
+            final byte[] bytes = ((EncodedBatch) batch).getEncoded();
+            encoded.write(bytes, 0, bytes.length);
+        } else {
+            encoder = EncoderFactory.get().binaryEncoder(encoded, encoder);
+            writer.write(batch, encoder);
+            encoder.flush();
+        }
+        byte[] payload = encoded.array();
+        int length = encoded.size();
+        byte flags = 0;
+        if (compress) {
+            final int raw = length - 4;
+            payload = deflate(payload, raw);
+            length = payload.length;
+            flags = COMPRESSED;
+        }
+        // Room for the terminating zero length.
+        if (writeBuffer.remaining() < RECORD_HEADER + length + 4) {
+            roll(RECORD_HEADER + length + 4);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        final int position = writeBuffer.position();
+        writeBuffer.position(position + 4);
+        writeBuffer.putInt((int) crc.getValue());
+        writeBuffer.put(flags);
+        writeBuffer.put(payload, 0, length);
+        // The length goes last so that a partially written record reads as the end of the data.
+        writeBuffer.putInt(position, length);
+    }
+
+    private byte[] deflate(final byte[] data, final int rawLength) {
+        final Deflater deflater = DeflaterPool.borrow();
+        try {
+            deflater.setInput(data, 4, rawLength);
+            deflater.finish();
+            byte[] out = new byte[4 + rawLength + (rawLength >> 3) + 64];
+            out[0] = (byte) (rawLength >>> 24);
+            out[1] = (byte) (rawLength >>> 16);
+            out[2] = (byte) (rawLength >>> 8);
+            out[3] = (byte) rawLength;
+            int length = 4;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length << 1);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            DeflaterPool.release(deflater);
+        }
+    }
+
+    private void roll(final int needed) throws IOException {
+        writeBuffer.force();
+        ++writeSeq;
+        final File file = segmentFile(writeSeq);
+        writeBuffer = map(file, Math.max(segmentSize, needed), true);
+        segments.put(writeSeq, file);
+        while (size() > maxBytes && segments.size() > 1) {
+            final Map.Entry<Long, File> oldest = segments.pollFirstEntry();
+            LOGGER.warn("Spill log is full, dropping undelivered events in " + oldest.getValue());
+            if (!oldest.getValue().delete()) {
+                LOGGER.warn("Unable to delete " + oldest.getValue());
+            }
+            if (oldest.getKey() == readSeq) {
+                openRead(segments.firstKey());
+                saveCursor();
+            }
+        }
+    }
+
+    private long size() {
+        long size = 0;
+        for (final File file : segments.values()) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Read the oldest batch that has not been committed yet. Repeated calls return the same batch until
+     * {@link #commit()} is called.
+     * @return The batch or null if the log is empty.
+     * @throws IOException if the segment cannot be read.
+     */
+    public synchronized List<AvroFlumeEvent> peek() throws IOException {
+        for (;;) {
+            final int offset = readBuffer.position();
+            final int limit = readSeq == writeSeq ? writeBuffer.position() : readBuffer.capacity();
+            final int length = offset + RECORD_HEADER <= limit ? readBuffer.getInt(offset) : 0;
+            if (length <= 0 || offset + RECORD_HEADER + length > limit) {
+                if (readSeq == writeSeq) {
+                    return null;
+                }
+                final long done = readSeq;
+                openRead(segments.higherKey(done));
+                saveCursor();
+                final File file = segments.remove(done);
+                if (!file.delete()) {
+                    LOGGER.warn("Unable to delete " + file);
+                }
+                continue;
+            }
+            final int crc = readBuffer.getInt(offset + 4);
+            final byte flags = readBuffer.get(offset + 8);
+            final byte[] payload = new byte[length];
+            final ByteBuffer view = readBuffer.duplicate();
+            view.position(offset + RECORD_HEADER);
+            view.get(payload);
+            final CRC32 check = new CRC32();
+            check.update(payload);
+            nextReadOffset = offset + RECORD_HEADER + length;
+            if ((int) check.getValue() != crc) {
+                LOGGER.warn("Skipping corrupted record in spill segment " + readSeq + " at " + offset);
+                commit();
+                continue;
+            }
+            return decode(payload, flags);
+        }
+    }
+
+    private List<AvroFlumeEvent> decode(byte[] payload, final byte flags) throws IOException {
+        int length = payload.length;
+        if ((flags & COMPRESSED) != 0) {
+            final int raw = ((payload[0] & 0xff) << 24) | ((payload[1] & 0xff) << 16) | ((payload[2] & 0xff) << 8)
+                | (payload[3] & 0xff);
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(payload, 4, payload.length - 4);
+                final byte[] out = new byte[raw];
+                int n = 0;
+                while (n < raw && !inflater.finished()) {
+                    final int read = inflater.inflate(out, n, raw - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += read;
+                }
+                payload = out;
+                length = n;
+            } catch (final DataFormatException ex) {
+                throw new IOException("Corrupted spill record", ex);
+            } finally {
+                inflater.end();
+            }
+        }
+        decoder = DecoderFactory.get().binaryDecoder(payload, 0, length, decoder);
+        return reader.read(null, decoder);
+    }
+
+    /**
+     * Mark the batch returned by the last {@link #peek()} as delivered.
+     */
+    public synchronized void commit() {
+        if (nextReadOffset < 0) {
+            return;
+        }
+        readBuffer.position(nextReadOffset);
+        nextReadOffset = -1;
+        saveCursor();
+    }
+
+    private void saveCursor() {
+        cursor.putLong(0, readSeq);
+        cursor.putInt(8, readBuffer.position());
+    }
+
+    /**
+     * @return true if every appended batch has been committed.
+     */
+    public synchronized boolean isEmpty() {
+        return readSeq == writeSeq && readBuffer.position() >= writeBuffer.position();
+    }
+
+    /**
+     * Flush the segments and the cursor to disk.
+     */
+    public synchronized void close() {
+        writeBuffer.force();
+        cursor.force();
+    }
+}
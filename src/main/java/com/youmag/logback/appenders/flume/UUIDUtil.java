@@ -25,11 +25,15 @@ import java.security.SecureRandom;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Generates a unique id. The generated UUID will be unique for approximately 8,925 years so long as
  * less than 4095 ids are generated per millisecond on the same device (as identified by its MAC adddress).
+ * <p>
+ * Timestamps are handed out by {@link #STRIPES} independent stripes, chosen by thread id, so that logging
+ * threads rarely contend: each stripe only uses the 100ns ticks congruent to its index and never repeats
+ * one, running ahead of the clock if it must.
  */
 public final class UUIDUtil {
     /**
@@ -39,7 +43,34 @@ public final class UUIDUtil {
 
     private static final String ASSIGNED_SEQUENCES = "com.youmag.logback.appenders.flume.assignedSequences";
 
-    private static AtomicInteger count = new AtomicInteger(0);
+    /** The number of timestamp stripes, a power of 2. */
+    private static final int STRIPES = 16;
+
+    /** Distance between two stripes in {@link #LAST_TIMES}, so that each one sits on its own cache line. */
+    private static final int STRIPE_PADDING = 8;
+
+    private static final AtomicLongArray LAST_TIMES = new AtomicLongArray(STRIPES * STRIPE_PADDING);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final int UUID_LENGTH = 36;
+
+    private static final int COMPACT_LENGTH = 22;
+
+    /** The node and clock sequence part of the textual form, which never changes. */
+    private static char[] suffix;
+
+    private static final ThreadLocal<char[]> CHARS = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            final char[] chars = new char[UUID_LENGTH];
+            System.arraycopy(suffix, 0, chars, UUID_LENGTH - suffix.length, suffix.length);
+            return chars;
+        }
+    };
 
     private static final long TYPE1 = 0x1000L;
 
@@ -149,6 +180,13 @@ public final class UUIDUtil {
         }
 
         least = buf.getLong() | rand << SHIFT_6;
+        final char[] chars = new char[UUID_LENGTH];
+        chars[23] = '-';
+        hex(least >>> SHIFT_6, chars, 19, 4);
+        hex(least, chars, 24, 12);
+        suffix = new char[18];
+        System.arraycopy(chars, 18, suffix, 0, suffix.length);
+        suffix[0] = '-';
     }
 
 
@@ -173,14 +211,89 @@ public final class UUIDUtil {
      * @return universally unique identifiers (UUID)
      */
     public static UUID getTimeBasedUUID() {
+        return new UUID(nextMostSignificantBits(), least);
+    }
 
-        final long time = ((System.currentTimeMillis() * HUNDRED_NANOS_PER_MILLI) +
-            NUM_100NS_INTERVALS_SINCE_UUID_EPOCH) + (count.incrementAndGet() % HUNDRED_NANOS_PER_MILLI);
+    /**
+     * Generates a Type 1 UUID in its usual 36 character form, without creating the UUID.
+     * @return The UUID as a String.
+     */
+    public static String getTimeBasedId() {
+        final char[] chars = CHARS.get();
+        final long most = nextMostSignificantBits();
+        hex(most >>> SHIFT_4, chars, 0, 8);
+        chars[8] = '-';
+        hex(most >>> SHIFT_2, chars, 9, 4);
+        chars[13] = '-';
+        hex(most, chars, 14, 4);
+        return new String(chars, 0, UUID_LENGTH);
+    }
+
+    /**
+     * Generates a Type 1 UUID as 22 characters of URL safe base64, without padding.
+     * @return The UUID as a String.
+     */
+    public static String getCompactTimeBasedId() {
+        return compact(nextMostSignificantBits(), least);
+    }
+
+    static String compact(final long most, final long least) {
+        final char[] chars = CHARS.get();
+        for (int i = 0; i < COMPACT_LENGTH; ++i) {
+            chars[i] = BASE64[sixBits(most, least, i * 6)];
+        }
+        final String id = new String(chars, 0, COMPACT_LENGTH);
+        System.arraycopy(suffix, 0, chars, UUID_LENGTH - suffix.length, suffix.length);
+        return id;
+    }
+
+    /**
+     * @return The 6 bits of the 128 bit value starting at the given bit, counted from the most significant one.
+     */
+    private static int sixBits(final long most, final long least, final int bit) {
+        if (bit + 6 <= 64) {
+            return (int) (most >>> (58 - bit)) & 63;
+        }
+        if (bit >= 64) {
+            final int b = bit - 64;
+            return (int) (b + 6 <= 64 ? least >>> (58 - b) : least << (b - 58)) & 63;
+        }
+        return (int) ((most << (bit - 58)) | (least >>> (122 - bit))) & 63;
+    }
+
+    private static void hex(long value, final char[] chars, final int offset, final int digits) {
+        for (int i = offset + digits - 1; i >= offset; --i) {
+            chars[i] = HEX[(int) value & 0xf];
+            value >>>= 4;
+        }
+    }
+
+    private static long nextMostSignificantBits() {
+        final long time = nextTime();
         final long timeLow = (time & LOW_MASK) << SHIFT_4;
         final long timeMid = (time & MID_MASK) >> SHIFT_2;
         final long timeHi = (time & HIGH_MASK) >> SHIFT_6;
-        final long most = timeLow | timeMid | TYPE1 | timeHi;
-        return new UUID(most, least);
+        return timeLow | timeMid | TYPE1 | timeHi;
+    }
+
+    /**
+     * @return A timestamp, in 100ns intervals since the UUID epoch, never returned before by this class loader.
+     */
+    private static long nextTime() {
+        final int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        final int slot = stripe * STRIPE_PADDING;
+        final long now = System.currentTimeMillis() * HUNDRED_NANOS_PER_MILLI + NUM_100NS_INTERVALS_SINCE_UUID_EPOCH;
+        long first = now - now % STRIPES + stripe;
+        if (first < now) {
+            first += STRIPES;
+        }
+        for (;;) {
+            final long last = LAST_TIMES.get(slot);
+            final long next = Math.max(first, last + STRIPES);
+            if (LAST_TIMES.compareAndSet(slot, last, next)) {
+                return next;
+            }
+        }
     }
 }
 
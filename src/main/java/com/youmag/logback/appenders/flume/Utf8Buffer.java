@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A reusable byte buffer that event bodies are rendered into. Text is encoded to UTF-8 directly into the
+ * buffer, so producing the body costs a single copy into an exactly sized array. The buffer follows the
+ * recent body sizes: it grows as needed and gives memory back once an unusually large body (a long stack
+ * trace, typically) has gone by.
+ */
+public final class Utf8Buffer extends OutputStream {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** Buffers smaller than this are never shrunk. */
+    private static final int SHRINK_THRESHOLD = 64 * 1024;
+
+    private static final ThreadLocal<Utf8Buffer> BUFFERS = new ThreadLocal<Utf8Buffer>() {
+        @Override
+        protected Utf8Buffer initialValue() {
+            return new Utf8Buffer();
+        }
+    };
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count = 0;
+    private int averageSize = 0;
+
+    /**
+     * Returns the calling thread's buffer, emptied.
+     * @return The buffer.
+     */
+    public static Utf8Buffer get() {
+        final Utf8Buffer buffer = BUFFERS.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Empties the buffer, shrinking it if it is far larger than what recent bodies needed.
+     */
+    public void reset() {
+        if (count > 0) {
+            // Exponentially weighted, each body counts for 1/8th.
+            averageSize += (count - averageSize) >> 3;
+        }
+        count = 0;
+        if (buf.length > SHRINK_THRESHOLD && buf.length > averageSize * 4) {
+            buf = new byte[Math.max(INITIAL_CAPACITY, averageSize * 2)];
+        }
+    }
+
+    /**
+     * Appends the UTF-8 encoding of the characters.
+     * @param chars The text to append.
+     * @return this buffer.
+     */
+    public Utf8Buffer append(final CharSequence chars) {
+        final int length = chars.length();
+        ensureCapacity(count + length);
+        int i = 0;
+        // ASCII fast path, the common case for log lines.
+        for (; i < length; ++i) {
+            final char c = chars.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buf[count++] = (byte) c;
+        }
+        for (; i < length; ++i) {
+            final char c = chars.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(count + 1);
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(count + 2);
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                final int cp = Character.toCodePoint(c, chars.charAt(++i));
+                ensureCapacity(count + 4);
+                buf[count++] = (byte) (0xF0 | (cp >> 18));
+                buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // Unpaired surrogate, encoded as '?' like String.getBytes does.
+                ensureCapacity(count + 1);
+                buf[count++] = (byte) '?';
+            } else {
+                ensureCapacity(count + 3);
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void write(final int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int off, final int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(bytes, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * @return A copy of the buffer contents.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Direct access to the underlying array, valid up to {@link #size()} until the next write.
+     * @return The backing array.
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache license, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the license for the specific language governing permissions and
+ * limitations under the license.
+ */
+package com.youmag.logback.appenders.flume;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How a thread waits for the other side of a {@link RingBuffer} to make progress.
+ */
+public abstract class WaitStrategy {
+    /** Spin without ever giving up the CPU. Lowest latency, burns a core. */
+    public static final String BUSY_SPIN = "busySpin";
+    /** Spin for a while and then yield. */
+    public static final String YIELDING = "yielding";
+    /** Spin, yield and then park for short periods. */
+    public static final String SLEEPING = "sleeping";
+    /** Park on a condition until signalled. Cheapest on CPU, highest wake-up latency. */
+    public static final String BLOCKING = "blocking";
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+
+    /**
+     * Returns a new WaitStrategy.
+     * @param name One of busySpin, yielding, sleeping or blocking. Defaults to sleeping.
+     * @return The WaitStrategy.
+     */
+    public static WaitStrategy forName(final String name) {
+        if (BUSY_SPIN.equalsIgnoreCase(name)) {
+            return new BusySpin();
+        }
+        if (YIELDING.equalsIgnoreCase(name)) {
+            return new Yielding();
+        }
+        if (BLOCKING.equalsIgnoreCase(name)) {
+            return new Blocking();
+        }
+        return new Sleeping();
+    }
+
+    /**
+     * Wait once.
+     * @param counter The number of times this wait has been called since the last progress, starting at 0.
+     * @return The counter to pass on the next call.
+     */
+    public abstract int idle(int counter);
+
+    /**
+     * Wake up any thread waiting in {@link #idle(int)}.
+     */
+    public void signalAll() {
+    }
+
+    private static class BusySpin extends WaitStrategy {
+        @Override
+        public int idle(final int counter) {
+            return counter + 1;
+        }
+    }
+
+    private static class Yielding extends WaitStrategy {
+        @Override
+        public int idle(final int counter) {
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    }
+
+    private static class Sleeping extends WaitStrategy {
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        @Override
+        public int idle(final int counter) {
+            if (counter >= SPIN_TRIES + YIELD_TRIES) {
+                LockSupport.parkNanos(PARK_NANOS);
+                return counter;
+            }
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    }
+
+    private static class Blocking extends WaitStrategy {
+        private static final long MAX_WAIT_MILLIS = 10;
+        private final Lock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private final AtomicInteger waiters = new AtomicInteger(0);
+
+        @Override
+        public int idle(final int counter) {
+            lock.lock();
+            waiters.incrementAndGet();
+            try {
+                // Bounded so that a signal racing with this wait only costs a short delay.
+                condition.await(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+            return counter + 1;
+        }
+
+        @Override
+        public void signalAll() {
+            if (waiters.get() == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AgentSelectorTest {
+
+	/**
+	 * A connection whose availability and latency are set by the test.
+	 */
+	private static class FakeConnection extends AvroAgentConnection {
+		volatile boolean available = true;
+		volatile double latency = 1;
+
+		FakeConnection(int port) {
+			super(new FlumeAgent("localhost", port), new FlumeAvroConfig(), new ManagerMetrics(), null);
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return available;
+		}
+
+		@Override
+		public double getAverageLatencyMillis() {
+			return latency;
+		}
+	}
+
+	/**
+	 * A connection that flips availability on every check, as if an I/O thread changed it between two reads.
+	 */
+	private static class FlappingConnection extends FakeConnection {
+		FlappingConnection(int port) {
+			super(port);
+		}
+
+		@Override
+		public boolean isAvailable() {
+			available = !available;
+			return !available;
+		}
+	}
+
+	private List<AvroAgentConnection> connections(FakeConnection... connections) {
+		return new ArrayList<AvroAgentConnection>(Arrays.asList(connections));
+	}
+
+	private int[] spread(AgentSelector selector, List<AvroAgentConnection> connections, int requests) {
+		int[] counts = new int[connections.size()];
+		for (int i = 0; i < requests; ++i) {
+			counts[selector.select(connections, 0)]++;
+		}
+		return counts;
+	}
+
+	@Test
+	public void testRoundRobinSpreadsEvenly() {
+		List<AvroAgentConnection> connections =
+				connections(new FakeConnection(1), new FakeConnection(2), new FakeConnection(3));
+		int[] counts = spread(AgentSelector.forName(AgentSelector.ROUND_ROBIN), connections, 300);
+		assertEquals(100, counts[0]);
+		assertEquals(100, counts[1]);
+		assertEquals(100, counts[2]);
+	}
+
+	@Test
+	public void testUnavailableAgentIsSkipped() {
+		FakeConnection down = new FakeConnection(2);
+		down.available = false;
+		List<AvroAgentConnection> connections = connections(new FakeConnection(1), down, new FakeConnection(3));
+		for (String name : Arrays.asList(AgentSelector.ROUND_ROBIN, AgentSelector.RANDOM,
+				AgentSelector.LEAST_LATENCY)) {
+			int[] counts = spread(AgentSelector.forName(name), connections, 200);
+			assertEquals(name, 0, counts[1]);
+			assertTrue(name, counts[0] > 0 && counts[2] > 0);
+		}
+	}
+
+	@Test
+	public void testAllUnavailableKeepsCurrent() {
+		FakeConnection first = new FakeConnection(1);
+		FakeConnection second = new FakeConnection(2);
+		first.available = false;
+		second.available = false;
+		List<AvroAgentConnection> connections = connections(first, second);
+		for (String name : Arrays.asList(AgentSelector.FAILOVER, AgentSelector.ROUND_ROBIN,
+				AgentSelector.RANDOM, AgentSelector.LEAST_LATENCY)) {
+			assertEquals(name, 1, AgentSelector.forName(name).select(connections, 1));
+		}
+	}
+
+	@Test
+	public void testLeastLatencyFavoursTheFastestAgent() {
+		FakeConnection fast = new FakeConnection(1);
+		FakeConnection slow = new FakeConnection(2);
+		slow.latency = 9;
+		int[] counts = spread(AgentSelector.forName(AgentSelector.LEAST_LATENCY), connections(fast, slow), 1000);
+		assertTrue(counts[0] > 3 * counts[1]);
+	}
+
+	@Test
+	public void testFlappingAvailabilityNeverYieldsAnInvalidIndex() {
+		List<AvroAgentConnection> connections =
+				connections(new FlappingConnection(1), new FlappingConnection(2), new FakeConnection(3));
+		for (String name : Arrays.asList(AgentSelector.ROUND_ROBIN, AgentSelector.RANDOM,
+				AgentSelector.LEAST_LATENCY)) {
+			AgentSelector selector = AgentSelector.forName(name);
+			for (int i = 0; i < 1000; ++i) {
+				int index = selector.select(connections, 0);
+				assertTrue(name + " selected " + index, index >= 0 && index < connections.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.ipc.Callback;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.apache.flume.source.avro.Status;
+import org.junit.Test;
+
+public class AvroAgentConnectionTest {
+
+	private List<AvroFlumeEvent> batch(int i) {
+		AvroFlumeEvent event = new AvroFlumeEvent();
+		event.setHeaders(new HashMap<CharSequence, CharSequence>());
+		event.setBody(ByteBuffer.wrap(("event " + i).getBytes()));
+		return Collections.singletonList(event);
+	}
+
+	/**
+	 * Counts the outcomes of asynchronous requests.
+	 */
+	private static class Outcomes implements Callback<Status> {
+		final AtomicInteger results = new AtomicInteger();
+		final AtomicInteger timeouts = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+
+		public void handleResult(Status status) {
+			results.incrementAndGet();
+		}
+
+		public void handleError(Throwable error) {
+			if (error instanceof TimeoutException) {
+				timeouts.incrementAndGet();
+			} else {
+				errors.incrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testWindowBlocksAtItsLimitUntilRequestsExpire() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setMaxInFlight(2);
+		config.setRequestTimeout(2000);
+		final AvroAgentConnection connection =
+				new AvroAgentConnection(stub.getAgent(), config, new ManagerMetrics(), SharedTransport.acquire());
+		try {
+			assertTrue(connection.connect());
+			stub.setBlackHole(true);
+			final Outcomes first = new Outcomes();
+			final Outcomes second = new Outcomes();
+			final Outcomes third = new Outcomes();
+			connection.sendAsync(null, batch(0), first);
+			connection.sendAsync(null, batch(1), second);
+			// Covers the deadlines of the first two requests only: the third one starts later.
+			final long expiry = System.currentTimeMillis() + config.getRequestTimeout();
+			Thread.sleep(20);
+			assertEquals(2, connection.getInFlight());
+
+			Thread blocked = new Thread() {
+				public void run() {
+					connection.sendAsync(null, batch(2), third);
+				}
+			};
+			blocked.start();
+			blocked.join(300);
+			assertTrue(blocked.isAlive());
+			assertEquals(2, connection.getInFlight());
+
+			// Expiring the outstanding requests frees the window.
+			connection.expire(expiry);
+			blocked.join(1000);
+			assertFalse(blocked.isAlive());
+			assertEquals(1, first.timeouts.get());
+			assertEquals(1, second.timeouts.get());
+			assertEquals(0, third.timeouts.get());
+			assertEquals(1, connection.getInFlight());
+
+			// Late acknowledgements of the expired requests are ignored, each callback runs once.
+			stub.setBlackHole(false);
+			connection.awaitOutstanding(2000);
+			assertEquals(0, connection.getInFlight());
+			for (Outcomes expired : Arrays.asList(first, second)) {
+				assertEquals(0, expired.results.get());
+				assertEquals(1, expired.timeouts.get());
+				assertEquals(0, expired.errors.get());
+			}
+			assertEquals(1, third.results.get());
+			assertEquals(0, third.timeouts.get());
+			assertEquals(0, third.errors.get());
+		} finally {
+			connection.close();
+			SharedTransport.release();
+			stub.close();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class AvroLoggingEventEncoderTest {
+
+	private final LoggerContext context = new LoggerContext();
+
+	private byte[] encode(LoggingEvent... events) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AvroLoggingEventEncoder encoder = new AvroLoggingEventEncoder();
+		encoder.setContext(context);
+		encoder.init(out);
+		encoder.start();
+		for (LoggingEvent event : events) {
+			encoder.doEncode(event);
+		}
+		encoder.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testEventIsDecodedWithTheSchema() throws IOException {
+		MDC.put("userId", "alice");
+		LoggingEvent event;
+		try {
+			event = new LoggingEvent("test", context.getLogger("com.example.Test"), Level.WARN,
+				"user {} failed {} times", new IllegalStateException("boom"), new Object[] { "alice", 3 });
+			// The MDC is copied on first access.
+			event.getMDCPropertyMap();
+		} finally {
+			MDC.remove("userId");
+		}
+		event.setTimeStamp(1350000000000L);
+		event.setThreadName("worker-1");
+
+		GenericDatumReader<GenericData.Record> reader =
+			new GenericDatumReader<GenericData.Record>(AvroLoggingEventEncoder.SCHEMA);
+		GenericData.Record record = reader.read(null, DecoderFactory.get().binaryDecoder(encode(event), null));
+
+		assertEquals(1350000000000L, record.get("timestamp"));
+		assertEquals("WARN", record.get("level").toString());
+		assertEquals("com.example.Test", record.get("logger").toString());
+		assertEquals("worker-1", record.get("thread").toString());
+		assertEquals("user {} failed {} times", record.get("message").toString());
+		List<?> args = (List<?>) record.get("args");
+		assertEquals(2, args.size());
+		assertEquals("alice", args.get(0).toString());
+		assertEquals("3", args.get(1).toString());
+		Map<?, ?> mdc = (Map<?, ?>) record.get("mdc");
+		assertEquals(1, mdc.size());
+		assertEquals("alice", mdc.values().iterator().next().toString());
+		assertTrue(record.get("throwable").toString().contains("IllegalStateException: boom"));
+	}
+
+	@Test
+	public void testConsecutiveEventsAreSeparateRecords() throws IOException {
+		LoggingEvent first = new LoggingEvent("test", context.getLogger("test"), Level.INFO, "first", null, null);
+		LoggingEvent second = new LoggingEvent("test", context.getLogger("test"), Level.DEBUG, null, null, null);
+
+		GenericDatumReader<GenericData.Record> reader =
+			new GenericDatumReader<GenericData.Record>(AvroLoggingEventEncoder.SCHEMA);
+		BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(encode(first, second), null);
+		GenericData.Record record = reader.read(null, decoder);
+		assertEquals("first", record.get("message").toString());
+		assertEquals(0, ((List<?>) record.get("args")).size());
+		assertNull(record.get("throwable"));
+		record = reader.read(null, decoder);
+		assertEquals("DEBUG", record.get("level").toString());
+		assertNull(record.get("message"));
+		assertTrue(decoder.isEnd());
+	}
+
+	@Test
+	public void testFingerprintIsStable() {
+		assertTrue(AvroLoggingEventEncoder.FINGERPRINT.matches("[0-9a-f]{16}"));
+		assertEquals(SchemaNormalization.parsingFingerprint64(AvroLoggingEventEncoder.SCHEMA),
+			new java.math.BigInteger(AvroLoggingEventEncoder.FINGERPRINT, 16).longValue());
+	}
+}
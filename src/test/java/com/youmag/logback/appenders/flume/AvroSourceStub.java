@@ -0,0 +1,233 @@
+package com.youmag.logback.appenders.flume;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.avro.util.Utf8;
+import org.apache.avro.ipc.NettyServer;
+import org.apache.avro.ipc.Server;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.apache.flume.source.avro.AvroSourceProtocol;
+import org.apache.flume.source.avro.Status;
+
+/**
+ * An in-process stand-in for a Flume avro source that accepts and counts everything it receives. Faults can
+ * be injected while it runs: added latency, FAILED replies, requests that are never answered, dropped
+ * connections and a dead agent.
+ */
+public class AvroSourceStub implements AvroSourceProtocol {
+	private static final Utf8 GUID = new Utf8("guId");
+	private static final Utf8 TIMESTAMP = new Utf8("timeStamp");
+
+	private final int port;
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong latestTimestamp = new AtomicLong();
+	private final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile Server server;
+	private volatile long latencyMillis = 0;
+	private volatile boolean failing = false;
+	private volatile boolean blackHole = false;
+	private volatile List<Map<String, String>> headers = null;
+	private volatile List<byte[]> bodies = null;
+
+	/**
+	 * Starts listening on the loopback interface.
+	 * @param port The port, 0 for any free port.
+	 */
+	public AvroSourceStub(int port) {
+		server = listen(port);
+		this.port = server.getPort();
+	}
+
+	private Server listen(int port) {
+		Server s = new NettyServer(new SpecificResponder(AvroSourceProtocol.class, this),
+			new InetSocketAddress("127.0.0.1", port));
+		s.start();
+		return s;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public FlumeAgent getAgent() {
+		return new FlumeAgent("127.0.0.1", port);
+	}
+
+	/**
+	 * @param latencyMillis Time added to every request before it is answered.
+	 */
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * @param failing If true requests are answered with Status.FAILED and their events discarded.
+	 */
+	public void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	/**
+	 * @param blackHole If true requests are never answered, as long as it stays true.
+	 */
+	public void setBlackHole(boolean blackHole) {
+		this.blackHole = blackHole;
+	}
+
+	/**
+	 * Drop every connection, as a restarting agent or a failing network would, and accept new ones.
+	 */
+	public synchronized void reset() {
+		server.close();
+		server = listen(port);
+	}
+
+	/**
+	 * Drop every connection and refuse new ones until {@link #start()}.
+	 */
+	public synchronized void kill() {
+		if (server != null) {
+			server.close();
+			server = null;
+		}
+	}
+
+	public synchronized void start() {
+		if (server == null) {
+			server = listen(port);
+		}
+	}
+
+	private boolean accept() {
+		try {
+			if (latencyMillis > 0) {
+				Thread.sleep(latencyMillis);
+			}
+			while (blackHole && server != null) {
+				Thread.sleep(10);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return !failing && server != null;
+	}
+
+	/**
+	 * Keep the headers of the events accepted from now on, see {@link #getHeaders()}.
+	 */
+	public void keepHeaders() {
+		headers = Collections.synchronizedList(new ArrayList<Map<String, String>>());
+	}
+
+	/**
+	 * @return The headers of the events accepted since {@link #keepHeaders()}, in the order received.
+	 */
+	public List<Map<String, String>> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Keep the bodies of the events accepted from now on, see {@link #getBodies()}.
+	 */
+	public void keepBodies() {
+		bodies = Collections.synchronizedList(new ArrayList<byte[]>());
+	}
+
+	/**
+	 * @return The bodies of the events accepted since {@link #keepBodies()}, in the order received.
+	 */
+	public List<byte[]> getBodies() {
+		return bodies;
+	}
+
+	private void record(AvroFlumeEvent event) {
+		List<Map<String, String>> kept = headers;
+		if (kept != null) {
+			Map<String, String> copy = new HashMap<String, String>();
+			for (Map.Entry<CharSequence, CharSequence> entry : event.getHeaders().entrySet()) {
+				copy.put(entry.getKey().toString(), entry.getValue().toString());
+			}
+			kept.add(copy);
+		}
+		List<byte[]> keptBodies = bodies;
+		if (keptBodies != null) {
+			byte[] body = new byte[event.getBody().remaining()];
+			event.getBody().duplicate().get(body);
+			keptBodies.add(body);
+		}
+		CharSequence id = event.getHeaders().get(GUID);
+		if (id != null) {
+			ids.add(id.toString());
+		}
+		CharSequence timestamp = event.getHeaders().get(TIMESTAMP);
+		if (timestamp != null) {
+			long value = Long.parseLong(timestamp.toString());
+			long latest = latestTimestamp.get();
+			while (value > latest && !latestTimestamp.compareAndSet(latest, value)) {
+				latest = latestTimestamp.get();
+			}
+		}
+	}
+
+	public Status append(AvroFlumeEvent event) {
+		if (!accept()) {
+			return Status.FAILED;
+		}
+		record(event);
+		events.incrementAndGet();
+		batches.incrementAndGet();
+		return Status.OK;
+	}
+
+	public Status appendBatch(List<AvroFlumeEvent> batch) {
+		if (!accept()) {
+			return Status.FAILED;
+		}
+		for (AvroFlumeEvent event : batch) {
+			record(event);
+		}
+		events.addAndGet(batch.size());
+		batches.incrementAndGet();
+		return Status.OK;
+	}
+
+	/**
+	 * @return The number of events accepted, duplicates included.
+	 */
+	public long getEventCount() {
+		return events.get();
+	}
+
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * @return The distinct event ids accepted.
+	 */
+	public Set<String> getIds() {
+		return ids;
+	}
+
+	/**
+	 * @return The most recent logging timestamp among the events accepted.
+	 */
+	public long getLatestTimestamp() {
+		return latestTimestamp.get();
+	}
+
+	public void close() {
+		kill();
+	}
+}
@@ -0,0 +1,75 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.junit.Test;
+
+public class BatchStripesTest {
+
+	private AvroFlumeEvent event(String thread, int index) {
+		AvroFlumeEvent event = new AvroFlumeEvent();
+		event.setHeaders(new HashMap<CharSequence, CharSequence>());
+		event.getHeaders().put("thread", thread);
+		event.getHeaders().put("index", Integer.toString(index));
+		event.setBody(ByteBuffer.wrap(new byte[10]));
+		return event;
+	}
+
+	@Test
+	public void testBatchCompletion() {
+		BatchStripes stripes = new BatchStripes(4, 3, 0);
+		assertFalse(stripes.add(event("main", 0), 10));
+		assertFalse(stripes.add(event("main", 1), 10));
+		assertTrue(stripes.add(event("main", 2), 10));
+		assertEquals(3, stripes.poll().size());
+		assertNull(stripes.poll());
+		assertFalse(stripes.add(event("main", 3), 10));
+		assertTrue(stripes.completeOlderThan(0));
+		assertEquals(1, stripes.poll().size());
+		assertFalse(stripes.completeOlderThan(0));
+	}
+
+	@Test
+	public void testThreadsKeepTheirOrder() throws InterruptedException {
+		final BatchStripes stripes = new BatchStripes(4, 7, 0);
+		final int threads = 16;
+		final int events = 1000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; ++t) {
+			final String name = "thread-" + t;
+			new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < events; ++i) {
+						stripes.add(event(name, i), 10);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		stripes.completeOlderThan(0);
+		Map<String, Integer> last = new HashMap<String, Integer>();
+		int total = 0;
+		List<AvroFlumeEvent> batch;
+		while ((batch = stripes.poll()) != null) {
+			for (AvroFlumeEvent event : batch) {
+				String thread = event.getHeaders().get("thread").toString();
+				int index = Integer.parseInt(event.getHeaders().get("index").toString());
+				Integer previous = last.put(thread, index);
+				assertEquals(previous == null ? 0 : previous + 1, index);
+				++total;
+			}
+		}
+		assertEquals(threads * events, total);
+	}
+}
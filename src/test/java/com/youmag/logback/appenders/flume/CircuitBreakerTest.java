@@ -0,0 +1,44 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpensAfterThresholdAndWaitsBeforeProbe() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 500);
+		assertFalse(breaker.recordFailure(0));
+		assertFalse(breaker.recordFailure(0));
+		assertTrue(breaker.isClosed());
+		assertTrue(breaker.recordFailure(100));
+		assertFalse(breaker.isClosed());
+		assertFalse(breaker.isProbeDue(400));
+		assertTrue(breaker.isProbeDue(600));
+
+		// A failed probe restarts the wait.
+		breaker.recordFailure(600);
+		assertFalse(breaker.isProbeDue(1000));
+
+		breaker.recordSuccess();
+		assertTrue(breaker.isClosed());
+	}
+
+	@Test
+	public void testSuccessResetsFailureCount() {
+		CircuitBreaker breaker = new CircuitBreaker(2, 500);
+		breaker.recordFailure(0);
+		breaker.recordSuccess();
+		assertFalse(breaker.recordFailure(0));
+		assertTrue(breaker.isClosed());
+	}
+
+	@Test
+	public void testTrip() {
+		CircuitBreaker breaker = new CircuitBreaker(5, 500);
+		breaker.trip(0);
+		assertFalse(breaker.isClosed());
+	}
+}
@@ -0,0 +1,115 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.junit.Test;
+
+public class CoalescerTest {
+
+	private Map<String, String> headers(String user, int i) {
+		Map<String, String> headers = new HashMap<String, String>();
+		headers.put("timeStamp", Long.toString(1350000000000L + i));
+		headers.put("guId", "id-" + i);
+		headers.put("userId", user);
+		return headers;
+	}
+
+	private Map<String, String> headersOf(AvroFlumeEvent event) {
+		Map<String, String> headers = new HashMap<String, String>();
+		for (Map.Entry<CharSequence, CharSequence> entry : event.getHeaders().entrySet()) {
+			headers.put(entry.getKey().toString(), entry.getValue().toString());
+		}
+		return headers;
+	}
+
+	private byte[] body(AvroFlumeEvent event) {
+		byte[] body = new byte[event.getBody().remaining()];
+		event.getBody().duplicate().get(body);
+		return body;
+	}
+
+	@Test
+	public void testLinesWithTheSameHeadersAreCoalesced() {
+		Coalescer coalescer = new Coalescer(3, 1024);
+		assertTrue(coalescer.add(headers("alice", 0), "line 0".getBytes()).isEmpty());
+		assertTrue(coalescer.add(headers("bob", 1), "line 1".getBytes()).isEmpty());
+		assertTrue(coalescer.add(headers("alice", 2), "line 2".getBytes()).isEmpty());
+		List<AvroFlumeEvent> completed = coalescer.add(headers("alice", 3), "line 3".getBytes());
+		assertEquals(1, completed.size());
+		AvroFlumeEvent event = completed.get(0);
+
+		Map<String, String> headers = headersOf(event);
+		assertEquals("3", headers.get(CoalescedEvents.COUNT));
+		assertEquals("alice", headers.get("userId"));
+		assertEquals("id-0", headers.get("guId"));
+		List<byte[]> lines = CoalescedEvents.decode(headers, body(event));
+		assertEquals(3, lines.size());
+		assertArrayEquals("line 0".getBytes(), lines.get(0));
+		assertArrayEquals("line 2".getBytes(), lines.get(1));
+		assertArrayEquals("line 3".getBytes(), lines.get(2));
+
+		List<AvroFlumeEvent> rest = coalescer.completeOlderThan(0);
+		assertEquals(1, rest.size());
+		assertEquals("bob", headersOf(rest.get(0)).get("userId"));
+		assertEquals(0, coalescer.completeOlderThan(0).size());
+	}
+
+	@Test
+	public void testCompletedBySize() {
+		Coalescer coalescer = new Coalescer(100, 20);
+		assertTrue(coalescer.add(headers("alice", 0), new byte[10]).isEmpty());
+		List<AvroFlumeEvent> completed = coalescer.add(headers("alice", 1), new byte[10]);
+		assertEquals(1, completed.size());
+		assertEquals("2", headersOf(completed.get(0)).get(CoalescedEvents.COUNT));
+	}
+
+	@Test
+	public void testEldestEvictedWhenTooManyAreOpen() {
+		Coalescer coalescer = new Coalescer(100, 1024);
+		for (int i = 0; i < Coalescer.MAX_OPEN; ++i) {
+			assertTrue(coalescer.add(headers("user-" + i, i), "line".getBytes()).isEmpty());
+		}
+		List<AvroFlumeEvent> evicted = coalescer.add(headers("one more", 0), "line".getBytes());
+		assertEquals(1, evicted.size());
+		assertEquals("user-0", headersOf(evicted.get(0)).get("userId"));
+	}
+
+	@Test
+	public void testEvictedEventIsKeptWhenTheNewLineCompletesItsOwn() {
+		Coalescer coalescer = new Coalescer(100, 1024);
+		for (int i = 0; i < Coalescer.MAX_OPEN; ++i) {
+			assertTrue(coalescer.add(headers("user-" + i, i), "line".getBytes()).isEmpty());
+		}
+		List<AvroFlumeEvent> completed = coalescer.add(headers("stack trace", 0), new byte[2048]);
+		assertEquals(2, completed.size());
+		assertEquals("user-0", headersOf(completed.get(0)).get("userId"));
+		assertEquals("stack trace", headersOf(completed.get(1)).get("userId"));
+		assertEquals(2048, CoalescedEvents.decode(headersOf(completed.get(1)), body(completed.get(1))).get(0).length);
+		assertEquals(Coalescer.MAX_OPEN - 1, coalescer.completeOlderThan(0).size());
+	}
+
+	@Test
+	public void testDecodeRejectsBadEnvelopes() {
+		Map<String, String> plain = Collections.emptyMap();
+		assertEquals(1, CoalescedEvents.decode(plain, "body".getBytes()).size());
+		try {
+			CoalescedEvents.decode(new byte[] {0, 0, 0, 9, 1, 2}, -1);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			CoalescedEvents.decode(new byte[] {0, 0, 0, 1, 1}, 2);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
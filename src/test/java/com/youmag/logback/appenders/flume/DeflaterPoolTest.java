@@ -0,0 +1,47 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class DeflaterPoolTest {
+
+	private byte[] gunzip(byte[] data) throws Exception {
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		byte[] text = "2013-01-01 12:00:00 com.example.Service [INFO] request handled\n".getBytes("UTF-8");
+		assertArrayEquals(text, gunzip(DeflaterPool.gzip(text)));
+
+		// Incompressible data larger than the scratch buffer.
+		byte[] random = new byte[100000];
+		new Random(42).nextBytes(random);
+		assertArrayEquals(random, gunzip(DeflaterPool.gzip(random)));
+	}
+
+	@Test
+	public void testLargeBodiesDoNotPinTheirScratchBuffer() throws Exception {
+		byte[] trace = new byte[1 << 20];
+		new Random(7).nextBytes(trace);
+		assertArrayEquals(trace, gunzip(DeflaterPool.gzip(trace)));
+		assertTrue(DeflaterPool.getScratchSize() <= DeflaterPool.MAX_SCRATCH);
+
+		byte[] text = "request handled".getBytes("UTF-8");
+		assertArrayEquals(text, gunzip(DeflaterPool.gzip(text)));
+	}
+}
@@ -0,0 +1,77 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.jboss.netty.channel.ChannelFactory;
+import org.junit.Test;
+
+public class EncodedBatchTest {
+
+	private EncodedBatch batch(int size) {
+		EncodedBatch batch = new EncodedBatch(size);
+		for (int i = 0; i < size; ++i) {
+			AvroFlumeEvent event = new AvroFlumeEvent();
+			event.setHeaders(new HashMap<CharSequence, CharSequence>());
+			event.getHeaders().put("index", Integer.toString(i));
+			event.setBody(ByteBuffer.wrap(("event " + i).getBytes()));
+			batch.add(event);
+		}
+		return batch;
+	}
+
+	@Test
+	public void testEncodedOnce() throws IOException {
+		EncodedBatch batch = batch(10);
+		assertFalse(batch.isEncoded());
+		byte[] encoded = batch.getEncoded();
+		assertTrue(batch.isEncoded());
+		assertSame(encoded, batch.getEncoded());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+		new SpecificDatumWriter<List<AvroFlumeEvent>>(EncodedBatch.SCHEMA).write(batch, encoder);
+		encoder.flush();
+		assertArrayEquals(bytes.toByteArray(), encoded);
+	}
+
+	@Test
+	public void testSentFromItsEncoding() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		stub.keepHeaders();
+		ChannelFactory transport = SharedTransport.acquire();
+		try {
+			AvroAgentConnection connection = new AvroAgentConnection(stub.getAgent(), new FlumeAvroConfig(),
+					new ManagerMetrics(), transport);
+			assertTrue(connection.connect());
+			EncodedBatch batch = batch(5);
+			connection.send(null, batch);
+			assertTrue(batch.isEncoded());
+			// A retry sends the same bytes again.
+			connection.send(null, batch);
+			connection.close();
+			assertEquals(10, stub.getEventCount());
+			List<Map<String, String>> headers = stub.getHeaders();
+			for (int i = 0; i < 10; ++i) {
+				assertEquals(Integer.toString(i % 5), headers.get(i).get("index"));
+			}
+		} finally {
+			SharedTransport.release();
+			stub.close();
+		}
+	}
+}
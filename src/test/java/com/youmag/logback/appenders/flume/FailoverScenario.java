@@ -0,0 +1,244 @@
+package com.youmag.logback.appenders.flume;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Measures how an appender rides out a fault of its primary agent. Events are logged at a steady rate to a
+ * primary and a secondary {@link AvroSourceStub}; after a warm-up a fault is injected in the primary and the
+ * scenario reports:
+ * <ul>
+ * <li>the stall: the longest logging call, and the total time spent in calls that took more than 1ms;</li>
+ * <li>the events lost;</li>
+ * <li>the time to recover: from the fault until an event logged after it reaches an agent.</li>
+ * </ul>
+ * Usage: FailoverScenario [avro|agent|all] [kill|reset|failed|blackHole|latency|all]
+ */
+public class FailoverScenario {
+	/** The primary stops listening. */
+	public static final String KILL = "kill";
+	/** The primary drops its connections and accepts new ones. */
+	public static final String RESET = "reset";
+	/** The primary answers every request with Status.FAILED. */
+	public static final String FAILED = "failed";
+	/** The primary never answers. */
+	public static final String BLACK_HOLE = "blackHole";
+	/** The primary takes 200ms to answer each request. */
+	public static final String LATENCY = "latency";
+
+	private static final String[] TYPES = {"avro", "agent"};
+	private static final String[] FAULTS = {KILL, RESET, FAILED, BLACK_HOLE, LATENCY};
+	private static final long STALL_THRESHOLD_NANOS = 1000000L;
+
+	private String type = "avro";
+	private String fault = KILL;
+	private long eventsPerSecond = 2000;
+	private long warmupMillis = 1000;
+	private long faultMillis = 4000;
+	private long drainMillis = 5000;
+	private int batchSize = 10;
+	private long requestTimeout = 1000;
+
+	/**
+	 * The outcome of a scenario.
+	 */
+	public static class Report {
+		public String type;
+		public String fault;
+		public long appended;
+		public long delivered;
+		public long maxStallMillis;
+		public long stalledMillis;
+		public long recoveryMillis = -1;
+
+		public long getLost() {
+			return appended - delivered;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-6s %-10s appended %6d lost %6d max stall %6dms stalled %6dms recovery %s",
+				type, fault, appended, getLost(), maxStallMillis, stalledMillis,
+				recoveryMillis < 0 ? "never" : recoveryMillis + "ms");
+		}
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public void setFault(String fault) {
+		this.fault = fault;
+	}
+
+	public void setEventsPerSecond(long eventsPerSecond) {
+		this.eventsPerSecond = eventsPerSecond;
+	}
+
+	public void setWarmupMillis(long warmupMillis) {
+		this.warmupMillis = warmupMillis;
+	}
+
+	public void setFaultMillis(long faultMillis) {
+		this.faultMillis = faultMillis;
+	}
+
+	public void setDrainMillis(long drainMillis) {
+		this.drainMillis = drainMillis;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Create the appender under test, usable for additional settings before it is started.
+	 */
+	protected FlumeAppender createAppender(LoggerContext context, AvroSourceStub primary,
+		AvroSourceStub secondary) {
+		PatternLayout layout = new PatternLayout();
+		layout.setContext(context);
+		layout.setPattern("%d{HH:mm:ss.SSS} %-5level %logger - %msg%n");
+		layout.start();
+
+		FlumeAppender appender = new FlumeAppender();
+		appender.setContext(context);
+		appender.setName("failover-" + type + "-" + fault);
+		appender.setType(type);
+		appender.setLayout(layout);
+		appender.setBatchSize(batchSize);
+		appender.setRequestTimeout(requestTimeout);
+		appender.setDataDir("InMemory");
+		appender.addAgent(primary.getAgent());
+		appender.addAgent(secondary.getAgent());
+		return appender;
+	}
+
+	private void inject(AvroSourceStub primary) {
+		if (KILL.equals(fault)) {
+			primary.kill();
+		} else if (RESET.equals(fault)) {
+			primary.reset();
+		} else if (FAILED.equals(fault)) {
+			primary.setFailing(true);
+		} else if (BLACK_HOLE.equals(fault)) {
+			primary.setBlackHole(true);
+		} else if (LATENCY.equals(fault)) {
+			primary.setLatencyMillis(200);
+		} else {
+			throw new IllegalArgumentException("Unknown fault " + fault);
+		}
+	}
+
+	private void heal(AvroSourceStub primary) {
+		primary.setBlackHole(false);
+		primary.setFailing(false);
+		primary.setLatencyMillis(0);
+	}
+
+	public Report run() throws InterruptedException {
+		final AvroSourceStub primary = new AvroSourceStub(0);
+		final AvroSourceStub secondary = new AvroSourceStub(0);
+		final LoggerContext context = new LoggerContext();
+		final FlumeAppender appender = createAppender(context, primary, secondary);
+		appender.start();
+		final Logger logger = context.getLogger("com.example.failover.FailoverScenario");
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong appended = new AtomicLong();
+		final AtomicLong maxStall = new AtomicLong();
+		final AtomicLong stalled = new AtomicLong();
+		final long periodNanos = 1000000000L / eventsPerSecond;
+		Thread thread = new Thread("failover-load") {
+			public void run() {
+				long intended = System.nanoTime();
+				while (running.get()) {
+					long now = System.nanoTime();
+					if (intended > now) {
+						LockSupport.parkNanos(intended - now);
+					}
+					long start = System.nanoTime();
+					appender.doAppend(new LoggingEvent(FailoverScenario.class.getName(), logger, Level.INFO,
+						"Event {}", null, new Object[] {appended.get()}));
+					appended.incrementAndGet();
+					long stall = System.nanoTime() - start;
+					if (stall > maxStall.get()) {
+						maxStall.set(stall);
+					}
+					if (stall > STALL_THRESHOLD_NANOS) {
+						stalled.addAndGet(stall);
+					}
+					intended += periodNanos;
+				}
+			}
+		};
+		Report report = new Report();
+		report.type = type;
+		report.fault = fault;
+		try {
+			thread.start();
+			Thread.sleep(warmupMillis);
+			long faultTime = System.currentTimeMillis();
+			inject(primary);
+			long end = faultTime + faultMillis;
+			while (System.currentTimeMillis() < end) {
+				if (report.recoveryMillis < 0 &&
+					Math.max(primary.getLatestTimestamp(), secondary.getLatestTimestamp()) > faultTime) {
+					report.recoveryMillis = System.currentTimeMillis() - faultTime;
+				}
+				Thread.sleep(1);
+			}
+			running.set(false);
+			thread.join();
+
+			long deadline = System.currentTimeMillis() + drainMillis;
+			while (delivered(primary, secondary) < appended.get() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			heal(primary);
+			appender.stop();
+		} finally {
+			primary.close();
+			secondary.close();
+			context.stop();
+		}
+		report.appended = appended.get();
+		report.delivered = delivered(primary, secondary);
+		report.maxStallMillis = maxStall.get() / 1000000L;
+		report.stalledMillis = stalled.get() / 1000000L;
+		return report;
+	}
+
+	private static long delivered(AvroSourceStub primary, AvroSourceStub secondary) {
+		Set<String> ids = new HashSet<String>(primary.getIds());
+		ids.addAll(secondary.getIds());
+		return ids.size();
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		String[] types = args.length > 0 && !"all".equals(args[0]) ? new String[] {args[0]} : TYPES;
+		String[] faults = args.length > 1 && !"all".equals(args[1]) ? new String[] {args[1]} : FAULTS;
+		for (String type : types) {
+			for (String fault : faults) {
+				FailoverScenario scenario = new FailoverScenario();
+				scenario.setType(type);
+				scenario.setFault(fault);
+				System.out.println(scenario.run());
+			}
+		}
+		// Flume's lifecycle supervisor threads outlive the embedded agent.
+		System.exit(0);
+	}
+}
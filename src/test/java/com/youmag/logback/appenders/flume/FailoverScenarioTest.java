@@ -0,0 +1,38 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FailoverScenarioTest {
+
+	/** Bound on the time to deliver again after the fault, and on any single append. */
+	private static final long MAX_RECOVERY_MILLIS = 1000;
+
+	private FailoverScenario.Report run(String fault) throws InterruptedException {
+		FailoverScenario scenario = new FailoverScenario();
+		scenario.setType("avro");
+		scenario.setFault(fault);
+		scenario.setEventsPerSecond(1000);
+		scenario.setWarmupMillis(500);
+		scenario.setFaultMillis(1500);
+		return scenario.run();
+	}
+
+	@Test
+	public void testAvroSurvivesDeadPrimary() throws InterruptedException {
+		FailoverScenario.Report report = run(FailoverScenario.KILL);
+		assertEquals(0, report.getLost());
+		assertTrue(report.toString(), report.recoveryMillis >= 0 && report.recoveryMillis < MAX_RECOVERY_MILLIS);
+		assertTrue(report.toString(), report.maxStallMillis < MAX_RECOVERY_MILLIS);
+	}
+
+	@Test
+	public void testAvroSurvivesFailingPrimary() throws InterruptedException {
+		FailoverScenario.Report report = run(FailoverScenario.FAILED);
+		assertEquals(0, report.getLost());
+		assertTrue(report.toString(), report.recoveryMillis >= 0 && report.recoveryMillis < MAX_RECOVERY_MILLIS);
+		assertTrue(report.toString(), report.maxStallMillis < MAX_RECOVERY_MILLIS);
+	}
+}
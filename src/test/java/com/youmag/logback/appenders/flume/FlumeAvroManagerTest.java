@@ -0,0 +1,206 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class FlumeAvroManagerTest {
+
+	private final LoggerContext context = new LoggerContext();
+	private final MdcProjection projection = new MdcProjection(null, null, null, null, null);
+
+	private FlumeEvent event(int i) {
+		FlumeEvent event = new FlumeEvent(new LoggingEvent("test", context.getLogger("test"), Level.INFO,
+				"event " + i, null, null), projection, false);
+		event.setBody(("event " + i).getBytes());
+		return event;
+	}
+
+	@Test
+	public void testStartsWithoutWaitingForAHungAgent() throws Exception {
+		// Accepts connections at the TCP level but never answers the handshake.
+		ServerSocket hung = new ServerSocket(0);
+		AvroSourceStub stub = new AvroSourceStub(0);
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setRequestTimeout(3000);
+		config.setConnectTimeout(1000);
+		try {
+			long start = System.currentTimeMillis();
+			FlumeAvroManager manager = FlumeAvroManager.getManager("startup",
+					Arrays.asList(new FlumeAgent("localhost", hung.getLocalPort()), stub.getAgent()), config);
+			assertTrue(System.currentTimeMillis() - start < 1000);
+			for (int i = 0; i < 10; ++i) {
+				manager.send(event(i), 0, 0);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (stub.getEventCount() < 10 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(10, stub.getEventCount());
+			assertEquals(1, manager.getCurrent());
+			manager.release();
+		} finally {
+			stub.close();
+			hung.close();
+		}
+	}
+
+	private static void await(AvroSourceStub primary, AvroSourceStub secondary, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (delivered(primary, secondary) < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static int delivered(AvroSourceStub primary, AvroSourceStub secondary) {
+		Set<String> ids = new HashSet<String>(primary.getIds());
+		ids.addAll(secondary.getIds());
+		return ids.size();
+	}
+
+	/**
+	 * Sends the first 10 events and waits for the manager to send to the primary, which it fails back to
+	 * if the secondary happened to connect first.
+	 */
+	private void warmUp(FlumeAvroManager manager, AvroSourceStub primary, AvroSourceStub secondary)
+			throws InterruptedException {
+		for (int i = 0; i < 10; ++i) {
+			manager.send(event(i), 0, 0);
+		}
+		await(primary, secondary, 10);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (manager.getCurrent() != 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, manager.getCurrent());
+	}
+
+	private FlumeAvroConfig pipelined() {
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setBatchSize(10);
+		config.setMaxInFlight(4);
+		config.setRequestTimeout(300);
+		config.setHealthCheckInterval(50);
+		return config;
+	}
+
+	@Test
+	public void testRejectedRequestsAreRetriedWithoutLossOrDuplication() throws Exception {
+		AvroSourceStub primary = new AvroSourceStub(0);
+		AvroSourceStub secondary = new AvroSourceStub(0);
+		try {
+			FlumeAvroManager manager = FlumeAvroManager.getManager("nack",
+					Arrays.asList(primary.getAgent(), secondary.getAgent()), pipelined());
+			warmUp(manager, primary, secondary);
+
+			// Answered FAILED: nothing is kept by the primary, every batch must be sent again.
+			primary.setFailing(true);
+			for (int i = 10; i < 100; ++i) {
+				manager.send(event(i), 0, 0);
+			}
+			await(primary, secondary, 100);
+			manager.release();
+
+			assertEquals(100, delivered(primary, secondary));
+			assertEquals(100, primary.getEventCount() + secondary.getEventCount());
+			assertTrue(manager.getMetrics().getRetries() > 0);
+		} finally {
+			primary.close();
+			secondary.close();
+		}
+	}
+
+	@Test
+	public void testExpiredRequestsAreRetriedWithoutLossOrDuplication() throws Exception {
+		AvroSourceStub primary = new AvroSourceStub(0);
+		AvroSourceStub secondary = new AvroSourceStub(0);
+		try {
+			FlumeAvroManager manager = FlumeAvroManager.getManager("expiry",
+					Arrays.asList(primary.getAgent(), secondary.getAgent()), pipelined());
+			warmUp(manager, primary, secondary);
+
+			// Never answered: the window fills, requests expire and are sent again to the secondary.
+			primary.setBlackHole(true);
+			for (int i = 10; i < 100; ++i) {
+				manager.send(event(i), 0, 0);
+			}
+			await(primary, secondary, 100);
+			// Closed while still silent, so that the expired requests are never accepted late.
+			primary.close();
+			manager.release();
+
+			assertEquals(100, delivered(primary, secondary));
+			assertEquals(100, primary.getEventCount() + secondary.getEventCount());
+			assertTrue(manager.getMetrics().getRetries() > 0);
+		} finally {
+			primary.close();
+			secondary.close();
+		}
+	}
+
+	@Test
+	public void testPendingBatchIsSentOnceItHasLingered() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setBatchSize(100);
+		config.setLingerMillis(300);
+		try {
+			FlumeAvroManager manager = FlumeAvroManager.getManager("linger", Arrays.asList(stub.getAgent()), config);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < 5; ++i) {
+				manager.send(event(i), 0, 0);
+			}
+			Thread.sleep(100);
+			assertEquals(0, stub.getEventCount());
+			long deadline = start + 5000;
+			while (stub.getEventCount() < 5 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(5, stub.getEventCount());
+			assertTrue(System.currentTimeMillis() - start >= 300);
+			manager.release();
+		} finally {
+			stub.close();
+		}
+	}
+
+	@Test
+	public void testBatchBytesCompletesABatchAndReleaseSendsTheRest() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setBatchSize(100);
+		config.setBatchBytes(50);
+		config.setLingerMillis(60000);
+		try {
+			FlumeAvroManager manager = FlumeAvroManager.getManager("bytes", Arrays.asList(stub.getAgent()), config);
+			for (int i = 0; i < 12; ++i) {
+				FlumeEvent event = event(i);
+				// 10 bytes each: every 5 events complete a batch.
+				event.setBody(String.format("event %04d", i).getBytes());
+				manager.send(event, 0, 0);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (stub.getEventCount() < 10 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(200);
+			assertEquals(10, stub.getEventCount());
+
+			manager.release();
+			assertEquals(12, stub.getEventCount());
+			assertEquals(12, stub.getIds().size());
+		} finally {
+			stub.close();
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.Utf8;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.junit.Test;
+
+public class FlumeDatumWriterTest {
+
+	private AvroFlumeEvent event() {
+		Map<CharSequence, CharSequence> headers = new LinkedHashMap<CharSequence, CharSequence>();
+		headers.put("timeStamp", "1350000000000");
+		headers.put("guId", "0b5e4c30-1234-11e2-8000-0123456789ab");
+		headers.put("cl\u00e9", "valeur \u00e9t\u00e9");
+		AvroFlumeEvent event = new AvroFlumeEvent();
+		event.setHeaders(headers);
+		event.setBody(ByteBuffer.wrap("body".getBytes()));
+		return event;
+	}
+
+	private byte[] write(DatumWriter<AvroFlumeEvent> writer, AvroFlumeEvent event) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bytes, null);
+		writer.write(event, encoder);
+		encoder.flush();
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void testSameEncodingAsAvro() throws IOException {
+		byte[] expected = write(new SpecificDatumWriter<AvroFlumeEvent>(AvroFlumeEvent.SCHEMA$), event());
+		byte[] actual = write(new FlumeDatumWriter<AvroFlumeEvent>(AvroFlumeEvent.SCHEMA$), event());
+		assertArrayEquals(expected, actual);
+
+		AvroFlumeEvent decoded = new SpecificDatumReader<AvroFlumeEvent>(AvroFlumeEvent.SCHEMA$).read(null,
+				DecoderFactory.get().binaryDecoder(actual, null));
+		assertEquals(new Utf8("valeur \u00e9t\u00e9"), decoded.getHeaders().get(new Utf8("cl\u00e9")));
+	}
+
+	@Test
+	public void testKeysAreCached() {
+		Utf8 key = FlumeDatumWriter.encodeKey("timeStamp");
+		assertSame(key, FlumeDatumWriter.encodeKey(new String("timeStamp")));
+		assertSame(key, FlumeDatumWriter.encodeKey(key));
+	}
+}
@@ -0,0 +1,83 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+public class FlumeLaneManagerTest {
+
+	private final LoggerContext context = new LoggerContext();
+	private final MdcProjection projection = new MdcProjection(null, null, null, null, null);
+
+	private FlumeEvent event(String requestId, int i) {
+		LoggingEvent loggingEvent = new LoggingEvent("test", context.getLogger("test"), Level.INFO,
+				"event " + i, null, null);
+		loggingEvent.setMDCPropertyMap(Collections.singletonMap("requestId", requestId));
+		FlumeEvent event = new FlumeEvent(loggingEvent, projection, false);
+		event.setBody(("event " + i).getBytes());
+		event.getHeaders().put("requestId", requestId);
+		event.getHeaders().put("index", Integer.toString(i));
+		return event;
+	}
+
+	@Test
+	public void testKeysKeepTheirLaneAndOrder() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		stub.keepHeaders();
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		config.setLanes(4);
+		config.setLaneKey("requestId");
+		config.setStartupTimeout(5000);
+		FlumeLaneManager manager = FlumeLaneManager.getManager("lanes", Arrays.asList(stub.getAgent()), config);
+		try {
+			assertEquals(4, manager.getLaneCount());
+			int count = 400;
+			for (int i = 0; i < count; ++i) {
+				manager.send(event("request-" + (i % 20), i), 0, 0);
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while (stub.getEventCount() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(count, stub.getEventCount());
+
+			Map<String, String> laneOfKey = new HashMap<String, String>();
+			Map<String, Long> lastSequence = new HashMap<String, Long>();
+			Map<String, Integer> lastIndex = new HashMap<String, Integer>();
+			Set<String> lanes = new HashSet<String>();
+			List<Map<String, String>> received = stub.getHeaders();
+			synchronized (received) {
+				for (Map<String, String> headers : received) {
+					String key = headers.get("requestId");
+					String lane = headers.get(FlumeLaneManager.LANE);
+					lanes.add(lane);
+					String previousLane = laneOfKey.put(key, lane);
+					assertTrue(previousLane == null || previousLane.equals(lane));
+					int index = Integer.parseInt(headers.get("index"));
+					Integer previousIndex = lastIndex.put(key, index);
+					assertTrue(previousIndex == null || previousIndex < index);
+					long sequence = Long.parseLong(headers.get(FlumeLaneManager.SEQUENCE));
+					Long previousSequence = lastSequence.put(lane, sequence);
+					assertEquals(previousSequence == null ? 0 : previousSequence + 1, sequence);
+				}
+			}
+			assertTrue(lanes.size() > 1);
+		} finally {
+			manager.release();
+			stub.close();
+		}
+	}
+}
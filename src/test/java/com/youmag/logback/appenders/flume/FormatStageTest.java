@@ -0,0 +1,170 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+public class FormatStageTest {
+
+	private final LoggerContext context = new LoggerContext();
+
+	private List<FlumeEvent> events(int count) {
+		List<FlumeEvent> events = new ArrayList<FlumeEvent>();
+		for (int i = 0; i < count; ++i) {
+			LoggingEvent loggingEvent = new LoggingEvent("test", context.getLogger("test"),
+					i % 10 == 9 ? Level.WARN : Level.INFO, "event " + i, null, null);
+			events.add(new FlumeEvent(loggingEvent, false, false));
+		}
+		return events;
+	}
+
+	private FormatStage stage(DropCounter dropped) {
+		ContextAwareBase status = new ContextAwareBase();
+		status.setContext(context);
+		return new FormatStage("test", 3, new FormatStage.Formatter() {
+			public void format(FlumeEvent event) {
+				if (event.getEvent().getLevel() == Level.WARN) {
+					throw new IllegalStateException("cannot format");
+				}
+				event.setBody(event.getEvent().getFormattedMessage().getBytes());
+				event.getHeaders().put("thread", Thread.currentThread().getName());
+			}
+		}, dropped, status);
+	}
+
+	@Test
+	public void testEventsAreFormattedInParallelAndInOrder() {
+		DropCounter dropped = new DropCounter();
+		FormatStage stage = stage(dropped);
+		try {
+			List<FlumeEvent> events = events(200);
+			stage.format(events);
+
+			assertEquals(180, events.size());
+			assertEquals(20, dropped.get(Level.WARN));
+			int previous = -1;
+			boolean worker = false;
+			for (FlumeEvent event : events) {
+				int index = Integer.parseInt(new String(event.getBody()).substring("event ".length()));
+				assertTrue(index > previous);
+				previous = index;
+				worker |= event.getHeaders().get("thread").startsWith("FlumeFormatter-test-");
+			}
+			assertTrue(worker);
+		} finally {
+			stage.stop();
+		}
+	}
+
+	@Test
+	public void testSmallBatchesStayOnTheSenderThread() {
+		FormatStage stage = stage(new DropCounter());
+		try {
+			List<FlumeEvent> events = events(FormatStage.MIN_SLICE);
+			stage.format(events);
+			for (FlumeEvent event : events) {
+				assertEquals(Thread.currentThread().getName(), event.getHeaders().get("thread"));
+			}
+		} finally {
+			stage.stop();
+		}
+	}
+
+	private FlumeAppender appender(AvroSourceStub stub, String pattern, boolean includeCallerData) {
+		PatternLayout layout = new PatternLayout();
+		layout.setContext(context);
+		layout.setPattern(pattern);
+		layout.start();
+
+		FlumeAppender appender = new FlumeAppender();
+		appender.setContext(context);
+		appender.setName("format");
+		appender.setType("avro");
+		appender.setLayout(layout);
+		appender.setBatchSize(50);
+		appender.setAsync(true);
+		appender.setFormatThreads(2);
+		appender.setIncludeCallerData(includeCallerData);
+		appender.setMdcIncludes("requestId");
+		appender.addAgent(stub.getAgent());
+		appender.start();
+		return appender;
+	}
+
+	@Test
+	public void testAppenderFormatsOffTheLoggingThread() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		stub.keepHeaders();
+		try {
+			FlumeAppender appender = appender(stub, "%msg", false);
+			Logger logger = context.getLogger("format");
+			logger.addAppender(appender);
+			for (int i = 0; i < 500; ++i) {
+				MDC.put("requestId", "r" + i);
+				logger.info("event {}", i);
+			}
+			MDC.remove("requestId");
+			appender.stop();
+
+			assertEquals(500, stub.getEventCount());
+			assertEquals(500, stub.getIds().size());
+			for (Map<String, String> headers : stub.getHeaders()) {
+				assertTrue(headers.containsKey(FlumeEvent.TIMESTAMP));
+				assertTrue(headers.get("mdc:requestId").startsWith("r"));
+			}
+		} finally {
+			stub.close();
+		}
+	}
+
+	private List<String> logWithLineNumbers(boolean includeCallerData) throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		stub.keepBodies();
+		try {
+			FlumeAppender appender = appender(stub, "%L %M", includeCallerData);
+			Logger logger = context.getLogger("caller");
+			logger.addAppender(appender);
+			for (int i = 0; i < 100; ++i) {
+				logger.info("event {}", i);
+			}
+			logger.detachAppender(appender);
+			appender.stop();
+
+			List<String> bodies = new ArrayList<String>();
+			for (byte[] body : stub.getBodies()) {
+				bodies.add(new String(body));
+			}
+			assertEquals(100, bodies.size());
+			return bodies;
+		} finally {
+			stub.close();
+		}
+	}
+
+	@Test
+	public void testCallerDataIsCapturedOnTheLoggingThread() throws Exception {
+		for (String body : logWithLineNumbers(true)) {
+			assertTrue(body, body.matches("\\d+ logWithLineNumbers"));
+		}
+	}
+
+	@Test
+	public void testCallerDataIsOnlyCapturedWhenIncluded() throws Exception {
+		for (String body : logWithLineNumbers(false)) {
+			assertTrue(body, body.startsWith("?"));
+		}
+	}
+}
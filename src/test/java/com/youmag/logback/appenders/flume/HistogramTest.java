@@ -0,0 +1,47 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testPercentilesAreBucketUpperBounds() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getPercentile(0.5));
+		for (int i = 1; i <= 100; ++i) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean(), 0.001);
+		// 50 falls in the bucket from 32 to 63.
+		assertEquals(63, histogram.getPercentile(0.5));
+		// 99 falls in the bucket from 64 to 127, capped by the maximum.
+		assertEquals(100, histogram.getPercentile(0.99));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final Histogram histogram = new Histogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 10000; ++i) {
+						histogram.record(i % 10);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(9, histogram.getMax());
+		assertEquals(4.5, histogram.getMean(), 0.001);
+	}
+}
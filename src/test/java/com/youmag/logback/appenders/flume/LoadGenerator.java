@@ -0,0 +1,199 @@
+package com.youmag.logback.appenders.flume;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Drives a FlumeAppender from several threads at a target rate against an in-process {@link AvroSourceStub}
+ * and reports the sustained rate, the append latency and how many events were delivered.
+ * <p>
+ * Latency is measured from the moment each event was scheduled to be logged, so that a stalled appender is
+ * charged for the events it delayed and not only for the one it blocked on.
+ * <p>
+ * Usage: LoadGenerator [avro|agent] [threads] [eventsPerSecond, 0 for no limit] [seconds] [batchSize] [async]
+ */
+public class LoadGenerator {
+	private String type = "avro";
+	private int threads = 4;
+	private long eventsPerSecond = 10000;
+	private long durationMillis = 10000;
+	private long drainMillis = 10000;
+	private int batchSize = 100;
+	private boolean async = false;
+
+	/**
+	 * The outcome of a run.
+	 */
+	public static class Report {
+		public String type;
+		public long appended;
+		public long delivered;
+		public long dropped;
+		public double seconds;
+		public long p50Micros;
+		public long p99Micros;
+		public long p999Micros;
+		public long maxMicros;
+
+		public double getEventsPerSecond() {
+			return appended / seconds;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d events in %.1fs (%.0f events/s), delivered %d, dropped %d, "
+				+ "append latency p50 %dus p99 %dus p99.9 %dus max %dus", type, appended, seconds,
+				getEventsPerSecond(), delivered, dropped, p50Micros, p99Micros, p999Micros, maxMicros);
+		}
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setEventsPerSecond(long eventsPerSecond) {
+		this.eventsPerSecond = eventsPerSecond;
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+
+	public void setDrainMillis(long drainMillis) {
+		this.drainMillis = drainMillis;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	/**
+	 * Create an appender, usable for additional settings before it is started.
+	 */
+	protected FlumeAppender createAppender(LoggerContext context, AvroSourceStub stub) {
+		PatternLayout layout = new PatternLayout();
+		layout.setContext(context);
+		layout.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
+		layout.start();
+
+		FlumeAppender appender = new FlumeAppender();
+		appender.setContext(context);
+		appender.setName("load-" + type);
+		appender.setType(type);
+		appender.setLayout(layout);
+		appender.setBatchSize(batchSize);
+		appender.setAsync(async);
+		appender.setDataDir("InMemory");
+		appender.addAgent(stub.getAgent());
+		return appender;
+	}
+
+	public Report run() throws InterruptedException {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		LoggerContext context = new LoggerContext();
+		try {
+			return run(stub, context);
+		} finally {
+			stub.close();
+			context.stop();
+		}
+	}
+
+	/**
+	 * Run against the given stub, which is left open.
+	 */
+	public Report run(final AvroSourceStub stub, LoggerContext context) throws InterruptedException {
+		final FlumeAppender appender = createAppender(context, stub);
+		appender.start();
+		final Logger logger = context.getLogger("com.example.load.LoadGenerator");
+		final Histogram latencies = new Histogram();
+		final AtomicLong appended = new AtomicLong();
+		final long periodNanos = eventsPerSecond > 0 ? threads * 1000000000L / eventsPerSecond : 0;
+		final long start = System.nanoTime();
+		final long end = start + durationMillis * 1000000L;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; ++t) {
+			final int thread = t;
+			new Thread("load-" + t) {
+				public void run() {
+					long intended = start + (periodNanos * thread) / threads;
+					long count = 0;
+					while (intended < end) {
+						long now = System.nanoTime();
+						if (periodNanos == 0) {
+							intended = now;
+						} else if (intended > now) {
+							LockSupport.parkNanos(intended - now);
+						}
+						appender.doAppend(new LoggingEvent(LoadGenerator.class.getName(), logger, Level.INFO,
+							"Request {} served in {}ms", null, new Object[] {count, count % 100}));
+						latencies.record((System.nanoTime() - intended) / 1000);
+						++count;
+						intended = periodNanos == 0 ? System.nanoTime() : intended + periodNanos;
+					}
+					appended.addAndGet(count);
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long dropped = appender.getDroppedEvents();
+		long deadline = System.currentTimeMillis() + drainMillis;
+		while (stub.getEventCount() < appended.get() - dropped && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		appender.stop();
+
+		Report report = new Report();
+		report.type = type;
+		report.appended = appended.get();
+		report.delivered = stub.getEventCount();
+		report.dropped = appender.getDroppedEvents();
+		report.seconds = seconds;
+		report.p50Micros = latencies.getPercentile(0.5);
+		report.p99Micros = latencies.getPercentile(0.99);
+		report.p999Micros = latencies.getPercentile(0.999);
+		report.maxMicros = latencies.getMax();
+		return report;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		LoadGenerator generator = new LoadGenerator();
+		if (args.length > 0) {
+			generator.setType(args[0]);
+		}
+		if (args.length > 1) {
+			generator.setThreads(Integer.parseInt(args[1]));
+		}
+		if (args.length > 2) {
+			generator.setEventsPerSecond(Long.parseLong(args[2]));
+		}
+		if (args.length > 3) {
+			generator.setDurationMillis(Long.parseLong(args[3]) * 1000);
+		}
+		if (args.length > 4) {
+			generator.setBatchSize(Integer.parseInt(args[4]));
+		}
+		if (args.length > 5) {
+			generator.setAsync(Boolean.parseBoolean(args[5]));
+		}
+		System.out.println(generator.run());
+	}
+}
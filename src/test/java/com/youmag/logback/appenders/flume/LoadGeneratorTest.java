@@ -0,0 +1,34 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+	private LoadGenerator.Report run(String type) throws InterruptedException {
+		LoadGenerator generator = new LoadGenerator();
+		generator.setType(type);
+		generator.setThreads(2);
+		generator.setEventsPerSecond(2000);
+		generator.setDurationMillis(1000);
+		generator.setBatchSize(50);
+		return generator.run();
+	}
+
+	@Test
+	public void testAvroDeliversEverything() throws InterruptedException {
+		LoadGenerator.Report report = run("avro");
+		assertTrue(report.toString(), report.appended >= 1500);
+		assertEquals(report.toString(), report.appended, report.delivered);
+		assertEquals(report.toString(), 0, report.dropped);
+	}
+
+	@Test
+	public void testAgentDeliversEverything() throws InterruptedException {
+		LoadGenerator.Report report = run("agent");
+		assertTrue(report.toString(), report.appended >= 1500);
+		assertEquals(report.toString(), report.appended, report.delivered);
+	}
+}
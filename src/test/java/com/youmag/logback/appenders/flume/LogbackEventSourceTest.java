@@ -0,0 +1,181 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flume.Channel;
+import org.apache.flume.ChannelException;
+import org.apache.flume.ChannelSelector;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.channel.ReplicatingChannelSelector;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+public class LogbackEventSourceTest {
+
+	@Test
+	public void testConcurrentSendsAreAllCommitted() throws InterruptedException {
+		Channel channel = new MemoryChannel();
+		Context channelContext = new Context();
+		channelContext.put("capacity", "100000");
+		channelContext.put("transactionCapacity", "10000");
+		Configurables.configure(channel, channelContext);
+		channel.start();
+
+		ChannelSelector selector = new ReplicatingChannelSelector();
+		selector.setChannels(Collections.singletonList(channel));
+
+		final LogbackEventSource source = new LogbackEventSource();
+		Context sourceContext = new Context();
+		sourceContext.put(LogbackEventSource.BATCH_SIZE, "1000");
+		source.configure(sourceContext);
+		source.setChannelProcessor(new ChannelProcessor(selector));
+		source.start();
+
+		final int threads = 8;
+		final int perThread = 500;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; ++t) {
+			new Thread() {
+				public void run() {
+					for (int i = 0; i < perThread; ++i) {
+						SimpleEvent event = new SimpleEvent();
+						event.setBody(new byte[] { (byte) i });
+						source.send(Collections.singletonList(event));
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+
+		int count = 0;
+		Transaction tx = channel.getTransaction();
+		tx.begin();
+		while (channel.take() != null) {
+			++count;
+		}
+		tx.commit();
+		tx.close();
+		assertEquals(threads * perThread, count);
+	}
+
+	private static SimpleEvent event(String body) {
+		SimpleEvent event = new SimpleEvent();
+		event.setBody(body.getBytes());
+		return event;
+	}
+
+	/**
+	 * Blocks the first transaction until released, fails those holding a "fail" event and records the others.
+	 */
+	private static class ScriptedProcessor extends ChannelProcessor {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> committed = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger transactions = new AtomicInteger();
+
+		ScriptedProcessor() {
+			super(new ReplicatingChannelSelector());
+		}
+
+		@Override
+		public void processEventBatch(List<Event> events) {
+			if (transactions.getAndIncrement() == 0) {
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					throw new ChannelException(ex);
+				}
+			}
+			List<String> bodies = new ArrayList<String>();
+			for (Event event : events) {
+				bodies.add(new String(event.getBody()));
+			}
+			if (bodies.contains("fail")) {
+				throw new ChannelException("channel full");
+			}
+			committed.addAll(bodies);
+		}
+	}
+
+	/**
+	 * Sends from a new thread, once it waits for the commit in progress.
+	 */
+	private Thread sendWhileBlocked(final LogbackEventSource source, final List<Exception> errors,
+			final String... bodies) throws InterruptedException {
+		Thread thread = new Thread() {
+			public void run() {
+				List<Event> events = new ArrayList<Event>();
+				for (String body : bodies) {
+					events.add(event(body));
+				}
+				try {
+					source.send(events);
+				} catch (Exception ex) {
+					errors.add(ex);
+				}
+			}
+		};
+		thread.start();
+		while (thread.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		return thread;
+	}
+
+	@Test
+	public void testOnlyCallersInAFailedTransactionFail() throws InterruptedException {
+		final LogbackEventSource source = new LogbackEventSource();
+		Context sourceContext = new Context();
+		sourceContext.put(LogbackEventSource.BATCH_SIZE, "2");
+		source.configure(sourceContext);
+		ScriptedProcessor processor = new ScriptedProcessor();
+		source.setChannelProcessor(processor);
+		source.start();
+
+		final List<Exception> firstErrors = Collections.synchronizedList(new ArrayList<Exception>());
+		Thread first = new Thread() {
+			public void run() {
+				try {
+					source.send(Collections.singletonList(event("first")));
+				} catch (Exception ex) {
+					firstErrors.add(ex);
+				}
+			}
+		};
+		first.start();
+		while (processor.transactions.get() == 0) {
+			Thread.sleep(1);
+		}
+		// Grouped while the first commit blocks, and written as [fail, c], [b, d].
+		List<Exception> failed = Collections.synchronizedList(new ArrayList<Exception>());
+		List<Exception> others = Collections.synchronizedList(new ArrayList<Exception>());
+		Thread c = sendWhileBlocked(source, failed, "fail", "c");
+		Thread b = sendWhileBlocked(source, others, "b");
+		Thread d = sendWhileBlocked(source, others, "d");
+		processor.release.countDown();
+		first.join();
+		c.join();
+		b.join();
+		d.join();
+
+		assertEquals(1, failed.size());
+		assertTrue(failed.get(0) instanceof ChannelException);
+		assertEquals(0, others.size());
+		assertEquals(0, firstErrors.size());
+		assertEquals(Arrays.asList("first", "b", "d"), processor.committed);
+		assertEquals(3, processor.transactions.get());
+	}
+}
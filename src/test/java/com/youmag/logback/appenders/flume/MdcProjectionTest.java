@@ -0,0 +1,52 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.qos.logback.core.LogbackException;
+
+public class MdcProjectionTest {
+
+	private Map<String, String> mdc() {
+		Map<String, String> mdc = new HashMap<String, String>();
+		mdc.put("user", "bob");
+		mdc.put("request", "42");
+		mdc.put("session", "abc");
+		return mdc;
+	}
+
+	@Test
+	public void testIncludes() {
+		Map<String, String> headers = new HashMap<String, String>();
+		new MdcProjection("user, request ,missing", null, null, null, null).project(mdc(), headers);
+		assertEquals(2, headers.size());
+		assertEquals("bob", headers.get("mdc:user"));
+		assertEquals("42", headers.get("mdc:request"));
+	}
+
+	@Test
+	public void testExcludesWithPrefix() {
+		Map<String, String> headers = new HashMap<String, String>();
+		new MdcProjection(null, "session", null, "ctx.", null).project(mdc(), headers);
+		assertEquals(2, headers.size());
+		assertEquals("bob", headers.get("ctx.user"));
+		assertFalse(headers.containsKey("ctx.session"));
+	}
+
+	@Test
+	public void testAllByDefault() {
+		Map<String, String> headers = new HashMap<String, String>();
+		new MdcProjection(null, null, "user", null, null).project(mdc(), headers);
+		assertEquals(3, headers.size());
+	}
+
+	@Test(expected = LogbackException.class)
+	public void testRequired() {
+		new MdcProjection(null, null, "user,tenant", null, null).project(mdc(), new HashMap<String, String>());
+	}
+}
@@ -0,0 +1,119 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+public class OverflowPolicyTest {
+
+	/**
+	 * A manager that does not accept anything until released.
+	 */
+	private static class StalledManager extends AbstractFlumeManager {
+		private final CountDownLatch stalled = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		public StalledManager() {
+			super("stalled");
+		}
+
+		@Override
+		public void send(FlumeEvent event, int delay, int retries) {
+		}
+
+		@Override
+		public void send(List<FlumeEvent> events, int delay, int retries) {
+			stalled.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private final LoggerContext context = new LoggerContext();
+	private final Logger logger = context.getLogger("test");
+	private final MdcProjection projection = new MdcProjection(null, null, null, null, null);
+
+	private FlumeEvent event(Level level) {
+		FlumeEvent event = new FlumeEvent(new LoggingEvent("test", logger, level, "message", null, null),
+			projection, false);
+		event.setBody("message".getBytes());
+		return event;
+	}
+
+	private AsyncSender stalledSender(StalledManager manager, String policy, DropCounter dropped)
+		throws InterruptedException {
+		ContextAwareBase status = new ContextAwareBase();
+		status.setContext(context);
+		AsyncSender sender = new AsyncSender("test", manager, 8, WaitStrategy.SLEEPING, 0, 0,
+			OverflowPolicy.forName(policy, 10), dropped, status);
+		sender.start();
+		sender.enqueue(event(Level.INFO));
+		manager.stalled.await();
+		return sender;
+	}
+
+	@Test
+	public void testDropNewest() throws InterruptedException {
+		StalledManager manager = new StalledManager();
+		DropCounter dropped = new DropCounter();
+		AsyncSender sender = stalledSender(manager, OverflowPolicy.DROP_NEWEST, dropped);
+		for (int i = 0; i < 20; ++i) {
+			sender.enqueue(event(Level.WARN));
+		}
+		assertEquals(8, sender.getQueueSize());
+		assertEquals(12, dropped.get(Level.WARN));
+		manager.release.countDown();
+		sender.stop(1000);
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		StalledManager manager = new StalledManager();
+		DropCounter dropped = new DropCounter();
+		AsyncSender sender = stalledSender(manager, OverflowPolicy.DROP_OLDEST, dropped);
+		for (int i = 0; i < 8; ++i) {
+			sender.enqueue(event(Level.DEBUG));
+		}
+		for (int i = 0; i < 8; ++i) {
+			sender.enqueue(event(Level.ERROR));
+		}
+		assertEquals(8, sender.getQueueSize());
+		assertEquals(8, dropped.get(Level.DEBUG));
+		assertEquals(0, dropped.get(Level.ERROR));
+		manager.release.countDown();
+		sender.stop(1000);
+	}
+
+	@Test
+	public void testDropByLevelShedsInfoFirst() throws InterruptedException {
+		StalledManager manager = new StalledManager();
+		DropCounter dropped = new DropCounter();
+		AsyncSender sender = stalledSender(manager, OverflowPolicy.DROP_BY_LEVEL, dropped);
+		for (int i = 0; i < 10; ++i) {
+			sender.enqueue(event(Level.INFO));
+		}
+		// INFO is shed once less than a fifth of the buffer is free.
+		assertEquals(7, sender.getQueueSize());
+		assertEquals(3, dropped.get(Level.INFO));
+		for (int i = 0; i < 3; ++i) {
+			sender.enqueue(event(Level.WARN));
+		}
+		assertEquals(8, sender.getQueueSize());
+		assertEquals(2, dropped.get(Level.WARN));
+		assertEquals(5, dropped.get());
+		manager.release.countDown();
+		sender.stop(1000);
+	}
+}
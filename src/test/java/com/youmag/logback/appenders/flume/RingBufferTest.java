@@ -0,0 +1,72 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	@Test
+	public void testCapacityIsRoundedToPowerOfTwo() {
+		assertEquals(8, new RingBuffer<Integer>(5).capacity());
+		assertEquals(8, new RingBuffer<Integer>(8).capacity());
+		assertEquals(2, new RingBuffer<Integer>(1).capacity());
+	}
+
+	@Test
+	public void testFifoAndFull() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(4);
+		for (int i = 0; i < 4; ++i) {
+			assertTrue(buffer.offer(i));
+		}
+		assertFalse(buffer.offer(4));
+		assertEquals(4, buffer.size());
+		for (int i = 0; i < 4; ++i) {
+			assertEquals(Integer.valueOf(i), buffer.poll());
+		}
+		assertNull(buffer.poll());
+		assertTrue(buffer.offer(5));
+		assertEquals(Integer.valueOf(5), buffer.poll());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final RingBuffer<Long> buffer = new RingBuffer<Long>(64);
+		final int producers = 4;
+		final int perProducer = 20000;
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; ++p) {
+			new Thread() {
+				public void run() {
+					for (long i = 1; i <= perProducer; ++i) {
+						while (!buffer.offer(i)) {
+							Thread.yield();
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		final AtomicLong sum = new AtomicLong();
+		long received = 0;
+		while (received < producers * perProducer) {
+			Long value = buffer.poll();
+			if (value == null) {
+				Thread.yield();
+				continue;
+			}
+			sum.addAndGet(value);
+			++received;
+		}
+		done.await();
+		long expected = producers * ((long) perProducer * (perProducer + 1) / 2);
+		assertEquals(expected, sum.get());
+		assertTrue(buffer.isEmpty());
+	}
+}
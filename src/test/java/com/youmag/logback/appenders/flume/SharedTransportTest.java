@@ -0,0 +1,53 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.jboss.netty.channel.ChannelFactory;
+import org.junit.Test;
+
+public class SharedTransportTest {
+
+	@Test
+	public void testSharedUntilLastRelease() {
+		int before = SharedTransport.getReferences();
+		ChannelFactory first = SharedTransport.acquire();
+		ChannelFactory second = SharedTransport.acquire();
+		assertSame(first, second);
+		// What NettyTransceiver.close() does, must not stop the shared threads.
+		second.releaseExternalResources();
+		assertSame(first, SharedTransport.acquire());
+		SharedTransport.release();
+		SharedTransport.release();
+		SharedTransport.release();
+		assertEquals(before, SharedTransport.getReferences());
+		if (before == 0) {
+			ChannelFactory fresh = SharedTransport.acquire();
+			assertNotSame(first, fresh);
+			SharedTransport.release();
+		}
+	}
+
+	@Test
+	public void testReconnectsDoNotCreateThreads() throws Exception {
+		AvroSourceStub stub = new AvroSourceStub(0);
+		FlumeAvroConfig config = new FlumeAvroConfig();
+		ChannelFactory transport = SharedTransport.acquire();
+		try {
+			AvroAgentConnection connection = new AvroAgentConnection(new FlumeAgent("localhost", stub.getPort()),
+					config, new ManagerMetrics(), transport);
+			connection.connect();
+			connection.close();
+			int threads = Thread.activeCount();
+			for (int i = 0; i < 20; ++i) {
+				connection.connect();
+				connection.close();
+			}
+			assertEquals(threads, Thread.activeCount(), 2);
+		} finally {
+			SharedTransport.release();
+			stub.close();
+		}
+	}
+}
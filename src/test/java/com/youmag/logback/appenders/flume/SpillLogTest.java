@@ -0,0 +1,94 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.avro.util.Utf8;
+import org.apache.flume.source.avro.AvroFlumeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillLogTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("spill", "");
+		dir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private List<AvroFlumeEvent> batch(int first, int count) {
+		List<AvroFlumeEvent> batch = new ArrayList<AvroFlumeEvent>();
+		for (int i = first; i < first + count; ++i) {
+			AvroFlumeEvent event = new AvroFlumeEvent();
+			event.setHeaders(new HashMap<CharSequence, CharSequence>());
+			event.getHeaders().put("n", Integer.toString(i));
+			event.setBody(ByteBuffer.wrap(("line " + i + " of a spilled batch").getBytes()));
+			batch.add(event);
+		}
+		return batch;
+	}
+
+	private int number(AvroFlumeEvent event) {
+		return Integer.parseInt(event.getHeaders().get(new Utf8("n")).toString());
+	}
+
+	private void checkReplay(boolean compress) throws Exception {
+		SpillLog log = new SpillLog(dir, 4096, 1 << 20, compress);
+		assertTrue(log.isEmpty());
+		for (int i = 0; i < 50; ++i) {
+			log.append(batch(i * 10, 10));
+		}
+		List<AvroFlumeEvent> first = log.peek();
+		assertEquals(0, number(first.get(0)));
+		// Not committed: the same batch comes back.
+		assertEquals(0, number(log.peek().get(0)));
+		log.commit();
+		log.close();
+
+		// Reopen, replay resumes after the committed batch.
+		log = new SpillLog(dir, 4096, 1 << 20, compress);
+		int expected = 10;
+		List<AvroFlumeEvent> batch;
+		while ((batch = log.peek()) != null) {
+			for (AvroFlumeEvent event : batch) {
+				assertEquals(expected++, number(event));
+			}
+			log.commit();
+		}
+		assertEquals(500, expected);
+		assertTrue(log.isEmpty());
+		assertNull(log.peek());
+		log.close();
+	}
+
+	@Test
+	public void testReplayAcrossSegmentsAndRestart() throws Exception {
+		checkReplay(false);
+	}
+
+	@Test
+	public void testCompressedReplay() throws Exception {
+		checkReplay(true);
+	}
+}
@@ -0,0 +1,61 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class UUIDUtilTest {
+
+	@Test
+	public void testTextualIdIsTypeOneUUID() {
+		String id = UUIDUtil.getTimeBasedId();
+		assertEquals(36, id.length());
+		UUID uuid = UUID.fromString(id);
+		assertEquals(1, uuid.version());
+		assertEquals(2, uuid.variant());
+		assertEquals(id, uuid.toString());
+		assertEquals(UUIDUtil.getTimeBasedUUID().getLeastSignificantBits(), uuid.getLeastSignificantBits());
+	}
+
+	@Test
+	public void testCompactEncoding() {
+		assertEquals("AAAAAAAAAAAAAAAAAAAAAA", UUIDUtil.compact(0, 0));
+		assertEquals("_____________________w", UUIDUtil.compact(-1, -1));
+		assertEquals("AAAAAAAAAA8AAAAAAAAAAA", UUIDUtil.compact(0xf, 0));
+		assertEquals("AAAAAAAAAADAAAAAAAAAAA", UUIDUtil.compact(0, 0xc000000000000000L));
+		// The textual form is untouched by a compact id generated on the same thread.
+		UUID uuid = UUID.fromString(UUIDUtil.getTimeBasedId());
+		assertEquals(uuid.getLeastSignificantBits(), UUID.fromString(UUIDUtil.getTimeBasedId()).getLeastSignificantBits());
+	}
+
+	@Test
+	public void testUniqueAcrossThreads() throws InterruptedException {
+		final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final int threads = 8;
+		final int perThread = 20000;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; ++t) {
+			final boolean compact = t % 2 == 0;
+			new Thread() {
+				public void run() {
+					for (int i = 0; i < perThread; ++i) {
+						ids.add(compact ? UUIDUtil.getCompactTimeBasedId() : UUIDUtil.getTimeBasedId());
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+		assertEquals(threads * perThread, ids.size());
+		for (String id : ids) {
+			assertTrue(id.length() == 22 || id.length() == 36);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.youmag.logback.appenders.flume;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class Utf8BufferTest {
+
+	@Test
+	public void testMatchesStringGetBytes() throws Exception {
+		String[] samples = { "", "plain ascii line\n", "caf\u00e9 \u20ac 100", "emoji \ud83d\ude00 end",
+				"lone \ud83d surrogate" };
+		for (String sample : samples) {
+			assertArrayEquals(sample, sample.getBytes("UTF-8"), Utf8Buffer.get().append(sample).toByteArray());
+		}
+	}
+
+	@Test
+	public void testGrowsAndShrinks() {
+		Utf8Buffer buffer = new Utf8Buffer();
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 200000; ++i) {
+			big.append('x');
+		}
+		buffer.append(big);
+		assertEquals(200000, buffer.size());
+		for (int i = 0; i < 50; ++i) {
+			buffer.reset();
+			buffer.append("small");
+		}
+		buffer.reset();
+		assertEquals(true, buffer.array().length < 200000);
+	}
+}